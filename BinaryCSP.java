@@ -3,27 +3,230 @@ import java.util.*;
 public final class BinaryCSP {
   private int[][] domainBounds;
   public List<BinaryConstraint> constraints;
-  public List<SortedSet<Integer>> domains;
-  // Variables left to assign.
-  List<Integer> varList;
+  public Domain[] domains;
+  // The constraints involving each variable.
+  private BinaryConstraint[][] incidentConstraints;
+  // The constraint between each pair of variables, stored in both directions. Null if there is none.
+  private BinaryConstraint[][] constraintLookup;
+  // Variables left to assign, stored as a bitset like a domain so that they iterate in ascending order.
+  Domain unassignedVars;
+  // The path of the .sym file next to the instance's .csp file, or null if there is none.
+  String symmetryFilePath;
+  // Symmetries of the instance read from its .sym file, or null if they have not been read.
+  BinaryCSPSymmetries symmetries;
+  // Buffers for isConnected(), made on first use so that checking at every node does not allocate.
+  // A variable has been reached by the current check if its mark equals reachedMark.
+  private int[] reachedMarks;
+  private int reachedMark = 0;
+  private int[] searchQueue;
 
   public BinaryCSP(int[][] db, List<BinaryConstraint> c) {
     domainBounds = db;
     constraints = c;
 
+    // Compile each constraint's tuples into support tables for quick checks during search.
+    for (BinaryConstraint constraint : constraints) {
+      int firstVar = constraint.getFirstVar();
+      int secondVar = constraint.getSecondVar();
+      constraint.compile(getLB(firstVar), getUB(firstVar), getLB(secondVar), getUB(secondVar));
+    }
+    buildConstraintIndex();
+
     // Create domains for the variables based on their bounds.
-    domains = new ArrayList<SortedSet<Integer>>();
-    varList = new LinkedList<Integer>();
+    domains = new Domain[getNoVariables()];
+    unassignedVars = new BitSetDomain(0, getNoVariables() - 1);
     for (int varIndex = 0; varIndex < getNoVariables(); varIndex++) {
-      varList.add(varIndex);
-      SortedSet<Integer> domain = new TreeSet<Integer>();
-      for (int val = getLB(varIndex); val <= getUB(varIndex); val++) {
-        domain.add(val);
+      domains[varIndex] = new BitSetDomain(getLB(varIndex), getUB(varIndex));
+    }
+  }
+
+  /**
+   * Builds the per-variable constraint arrays and the pairwise constraint lookup.
+   * Done once so that search never has to scan the full list of constraints.
+   */
+  private void buildConstraintIndex() {
+    int n = getNoVariables();
+    int[] degrees = new int[n];
+    for (BinaryConstraint constraint : constraints) {
+      degrees[constraint.getFirstVar()]++;
+      degrees[constraint.getSecondVar()]++;
+    }
+
+    incidentConstraints = new BinaryConstraint[n][];
+    for (int var = 0; var < n; var++) {
+      incidentConstraints[var] = new BinaryConstraint[degrees[var]];
+      degrees[var] = 0;
+    }
+
+    constraintLookup = new BinaryConstraint[n][n];
+    for (int i = 0; i < constraints.size(); i++) {
+      BinaryConstraint constraint = constraints.get(i);
+      constraint.setId(i);
+      int firstVar = constraint.getFirstVar();
+      int secondVar = constraint.getSecondVar();
+      incidentConstraints[firstVar][degrees[firstVar]++] = constraint;
+      incidentConstraints[secondVar][degrees[secondVar]++] = constraint;
+      // Keep the first constraint read for a pair of variables, as the linear scans did.
+      if (constraintLookup[firstVar][secondVar] == null) {
+        constraintLookup[firstVar][secondVar] = constraint;
+        constraintLookup[secondVar][firstVar] = constraint;
       }
-      domains.add(domain);
     }
   }
 
+  /**
+   * Gets the constraints involving a variable.
+   * @param varIndex The variable to get the constraints of.
+   * @return The constraints with varIndex as their first or second variable. Must not be modified.
+   */
+  public BinaryConstraint[] getConstraints(int varIndex) {
+    return incidentConstraints[varIndex];
+  }
+
+  /**
+   * Gets the constraint between two variables, in either order.
+   * @param var1 The first variable.
+   * @param var2 The second variable.
+   * @return The constraint between the two variables or null if there is none.
+   */
+  public BinaryConstraint getConstraint(int var1, int var2) {
+    return constraintLookup[var1][var2];
+  }
+
+  /**
+   * Creates a copy for use by another solver, sharing the constraints and their compiled tables.
+   * The constraints are never changed during search, so the copy only needs its own domains and variables left to assign.
+   * @return A copy of the instance with the current domains and variables left to assign.
+   */
+  public BinaryCSP copy() {
+    return new BinaryCSP(this);
+  }
+
+  /**
+   * Creates a copy like copy(), but with only some of the variables left to assign, e.g. the variables of a component.
+   * @param vars The variables left to assign in the copy.
+   * @return A copy of the instance with the current domains.
+   */
+  public BinaryCSP copy(int[] vars) {
+    BinaryCSP copy = new BinaryCSP(this);
+    for (int var = unassignedVars.first(); var != Domain.NONE; var = unassignedVars.next(var)) {
+      copy.unassignedVars.remove(var);
+    }
+    for (int var : vars) {
+      copy.unassignedVars.restore(var);
+    }
+    return copy;
+  }
+
+  /**
+   * Finds the connected components of the constraint graph between the variables left to assign.
+   * Constraints to assigned variables do not join components, as their values have already been checked against them.
+   * Components can then be solved independently, with their numbers of solutions multiplied.
+   * @return The variables of each component in ascending order. Components are ordered by their smallest variable.
+   */
+  public List<int[]> components() {
+    boolean[] reached = new boolean[getNoVariables()];
+    int[] queue = new int[getNoVariables()];
+    List<int[]> components = new ArrayList<int[]>();
+    for (int start = unassignedVars.first(); start != Domain.NONE; start = unassignedVars.next(start)) {
+      if (reached[start]) {
+        continue;
+      }
+      // Search breadth first from the smallest variable not yet reached.
+      reached[start] = true;
+      queue[0] = start;
+      int head = 0;
+      int tail = 1;
+      while (head < tail) {
+        int var = queue[head++];
+        for (BinaryConstraint constraint : incidentConstraints[var]) {
+          int otherVar = constraint.getOtherVar(var);
+          if (!reached[otherVar] && unassignedVars.contains(otherVar)) {
+            reached[otherVar] = true;
+            queue[tail++] = otherVar;
+          }
+        }
+      }
+      int[] component = Arrays.copyOf(queue, tail);
+      Arrays.sort(component);
+      components.add(component);
+    }
+    return components;
+  }
+
+  /**
+   * Checks whether the variables left to assign form at most one component, like components().size() <= 1, but
+   * reusing the same buffers each time.
+   * @return Whether no two variables left to assign are in different components.
+   */
+  public boolean isConnected() {
+    int start = unassignedVars.first();
+    if (start == Domain.NONE) {
+      return true;
+    }
+    if (reachedMarks == null) {
+      reachedMarks = new int[getNoVariables()];
+      searchQueue = new int[getNoVariables()];
+    }
+    if (++reachedMark == 0) {
+      // The marks have wrapped around, so old ones could be mistaken for new ones.
+      Arrays.fill(reachedMarks, 0);
+      reachedMark = 1;
+    }
+    reachedMarks[start] = reachedMark;
+    searchQueue[0] = start;
+    int head = 0;
+    int tail = 1;
+    // Stop as soon as every variable left has been reached, which on dense graphs is after the first few.
+    int unassigned = unassignedVars.size();
+    while (head < tail && tail < unassigned) {
+      int var = searchQueue[head++];
+      for (BinaryConstraint constraint : incidentConstraints[var]) {
+        int otherVar = constraint.getOtherVar(var);
+        if (reachedMarks[otherVar] != reachedMark && unassignedVars.contains(otherVar)) {
+          reachedMarks[otherVar] = reachedMark;
+          searchQueue[tail++] = otherVar;
+        }
+      }
+    }
+    return tail == unassigned;
+  }
+
+  /**
+   * Checks whether a variable shares constraints with at most one other variable left to assign. Assigning such a
+   * variable cannot split the other variables left to assign into more components.
+   * @param var The variable.
+   * @return Whether at most one other variable left to assign is joined to var.
+   */
+  public boolean hasAtMostOneUnassignedNeighbour(int var) {
+    int neighbour = -1;
+    for (BinaryConstraint constraint : incidentConstraints[var]) {
+      int otherVar = constraint.getOtherVar(var);
+      if (otherVar != neighbour && unassignedVars.contains(otherVar)) {
+        if (neighbour != -1) {
+          return false;
+        }
+        neighbour = otherVar;
+      }
+    }
+    return true;
+  }
+
+  private BinaryCSP(BinaryCSP other) {
+    domainBounds = other.domainBounds;
+    constraints = other.constraints;
+    incidentConstraints = other.incidentConstraints;
+    constraintLookup = other.constraintLookup;
+    symmetryFilePath = other.symmetryFilePath;
+    symmetries = other.symmetries;
+
+    domains = new Domain[other.domains.length];
+    for (int varIndex = 0; varIndex < domains.length; varIndex++) {
+      domains[varIndex] = other.domains[varIndex].copy();
+    }
+    unassignedVars = other.unassignedVars.copy();
+  }
+
   public String toString() {
     StringBuffer result = new StringBuffer();
     result.append("CSP:\n");
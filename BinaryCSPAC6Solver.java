@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+/**
+ * Maintains arc consistency with AC-6 instead of AC3.
+ * Each value keeps one current support on each arc, and each value keeps a list of the values it currently supports.
+ * Propagation reacts to the individual values removed rather than revising whole arcs.
+ * When a value is removed, only the values in its support lists look for a new support.
+ * The removals on the trail double up as the propagation queue.
+ * Each (removed value, constraint) pair processed is counted as a revision.
+ */
+public class BinaryCSPAC6Solver extends BinaryCSPSolver {
+    public BinaryCSPAC6Solver(String instanceFilePath, int solutionsToFind, int varSelectMode, int valSelectMode,
+            boolean debugMode) {
+        super(instanceFilePath, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        createSupportLists();
+    }
+
+    public BinaryCSPAC6Solver(BinaryCSP instance, int solutionsToFind, int varSelectMode, int valSelectMode,
+            boolean debugMode) {
+        super(instance, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        createSupportLists();
+    }
+
+    public BinaryCSPAC6Solver(BinaryCSP instance, int solutionsToFind, BinaryCSPSolver.VarSelectMode varSelectMode,
+            BinaryCSPSolver.ValSelectMode valSelectMode, boolean debugMode) {
+        super(instance, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        createSupportLists();
+    }
+
+    // All arrays are indexed by arc id first. The arc revises var x against the constraint's other variable y.
+    // Values are stored offset by the lower bound of their variable.
+    // heads[arc][b] is the first value of x currently supported by value b of y, or -1 if there is none.
+    private int[][] heads;
+    // nexts and prevs link the values of x supported by the same value of y into a doubly linked list.
+    private int[][] nexts;
+    private int[][] prevs;
+
+    // The number of removals on the trail that have been propagated.
+    private int propagated = 0;
+
+    /**
+     * Allocates the support and support list arrays for every arc.
+     */
+    private void createSupportLists() {
+        int numberOfArcs = 2 * instance.constraints.size();
+        heads = new int[numberOfArcs][];
+        nexts = new int[numberOfArcs][];
+        prevs = new int[numberOfArcs][];
+        for (BinaryConstraint constraint : instance.constraints) {
+            for (int var : new int[] { constraint.getFirstVar(), constraint.getSecondVar() }) {
+                int arcId = constraint.getArcId(var);
+                int otherVar = constraint.getOtherVar(var);
+                nexts[arcId] = new int[instance.getUB(var) - instance.getLB(var) + 1];
+                prevs[arcId] = new int[nexts[arcId].length];
+                heads[arcId] = new int[instance.getUB(otherVar) - instance.getLB(otherVar) + 1];
+                Arrays.fill(heads[arcId], -1);
+            }
+        }
+    }
+
+    @Override
+    boolean enforceLocalConsistency(int var, boolean changed) {
+        return propagate();
+    }
+
+    /**
+     * Finds an initial support for every value on every arc, then propagates the removals of unsupported values.
+     */
+    @Override
+    boolean prepareSolver() {
+        for (BinaryConstraint constraint : instance.constraints) {
+            for (int var : new int[] { constraint.getFirstVar(), constraint.getSecondVar() }) {
+                int otherVar = constraint.getOtherVar(var);
+                Domain domain = instance.domains[var];
+                Domain otherDomain = instance.domains[otherVar];
+                for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+                    int support = nextSupport(constraint, var, val, otherDomain, Domain.NONE);
+                    if (support == Domain.NONE) {
+                        if (!pruneDomain(var, val)) {
+                            System.out.println("Initial problem is not arc consistent. Cannot find a solution.");
+                            return false;
+                        }
+                    } else {
+                        link(constraint.getArcId(var), val - instance.getLB(var),
+                                support - instance.getLB(otherVar));
+                    }
+                }
+            }
+        }
+        if (!propagate()) {
+            System.out.println("Initial problem is not arc consistent. Cannot find a solution.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removals that were undone are no longer waiting to be propagated.
+     */
+    @Override
+    protected void revertState() {
+        super.revertState();
+        if (propagated > trail.size()) {
+            propagated = trail.size();
+        }
+    }
+
+    /**
+     * Propagates every removal on the trail that has not been propagated yet, including removals made while doing so.
+     * @return Whether no domain was wiped out.
+     */
+    private boolean propagate() {
+        while (propagated < trail.size()) {
+            int removedVar = trail.getVar(propagated);
+            int removedVal = trail.getVal(propagated);
+            propagated++;
+            for (BinaryConstraint constraint : instance.getConstraints(removedVar)) {
+                revisionsDone++;
+                if (!findNewSupports(constraint, constraint.getOtherVar(removedVar), removedVar, removedVal)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds a new support for each value of var that was supported by a value which has now been removed.
+     * Values with no other support are pruned, which adds them to the trail to be propagated in turn.
+     * @param constraint The constraint between var and removedVar.
+     * @param var The variable with values that may have lost their support.
+     * @param removedVar The variable that lost a value.
+     * @param removedVal The value that was removed.
+     * @return Whether the domain of var still has values left.
+     */
+    private boolean findNewSupports(BinaryConstraint constraint, int var, int removedVar, int removedVal) {
+        int arcId = constraint.getArcId(var);
+        int lb = instance.getLB(var);
+        int otherLB = instance.getLB(removedVar);
+        Domain domain = instance.domains[var];
+        Domain otherDomain = instance.domains[removedVar];
+
+        int index = heads[arcId][removedVal - otherLB];
+        while (index != -1) {
+            int nextIndex = nexts[arcId][index];
+            int val = lb + index;
+            // Values that are no longer in the domain keep their old support, which comes back with them on backtracking.
+            if (domain.contains(val)) {
+                int support = nextSupport(constraint, var, val, otherDomain, removedVal);
+                if (support == Domain.NONE) {
+                    if (!pruneDomain(var, val)) {
+                        constraintFailed(constraint);
+                        return false;
+                    }
+                } else {
+                    unlink(arcId, index, removedVal - otherLB);
+                    link(arcId, index, support - otherLB);
+                }
+            }
+            index = nextIndex;
+        }
+        return true;
+    }
+
+    /**
+     * Looks for a support of a value, starting after its old support and wrapping around.
+     * Supports are not restored on backtracking, so values before the old support may have come back.
+     * @param constraint The constraint to check against.
+     * @param var The variable with the value needing support.
+     * @param val The value needing support.
+     * @param otherDomain The domain of the constraint's other variable.
+     * @param oldSupport The support that was lost or NONE to search from the start.
+     * @return The support found or NONE if there is none.
+     */
+    private int nextSupport(BinaryConstraint constraint, int var, int val, Domain otherDomain, int oldSupport) {
+        int start = oldSupport == Domain.NONE ? otherDomain.first() : otherDomain.next(oldSupport);
+        for (int otherVal = start; otherVal != Domain.NONE; otherVal = otherDomain.next(otherVal)) {
+            if (constraint.isSupported(var, val, otherVal)) {
+                return otherVal;
+            }
+        }
+        if (oldSupport != Domain.NONE) {
+            for (int otherVal = otherDomain.first(); otherVal != Domain.NONE
+                    && otherVal < oldSupport; otherVal = otherDomain.next(otherVal)) {
+                if (constraint.isSupported(var, val, otherVal)) {
+                    return otherVal;
+                }
+            }
+        }
+        return Domain.NONE;
+    }
+
+    /**
+     * Adds a value to the list of its new support.
+     * @param arcId The arc of the support.
+     * @param index The value being supported, offset by its lower bound.
+     * @param supportIndex The supporting value, offset by its lower bound.
+     */
+    private void link(int arcId, int index, int supportIndex) {
+        int head = heads[arcId][supportIndex];
+        prevs[arcId][index] = -1;
+        nexts[arcId][index] = head;
+        if (head != -1) {
+            prevs[arcId][head] = index;
+        }
+        heads[arcId][supportIndex] = index;
+    }
+
+    /**
+     * Removes a value from the list of its support.
+     * @param arcId The arc of the support.
+     * @param index The value being supported, offset by its lower bound.
+     * @param supportIndex The supporting value, offset by its lower bound.
+     */
+    private void unlink(int arcId, int index, int supportIndex) {
+        int prev = prevs[arcId][index];
+        int next = nexts[arcId][index];
+        if (prev == -1) {
+            heads[arcId][supportIndex] = next;
+        } else {
+            nexts[arcId][prev] = next;
+        }
+        if (next != -1) {
+            prevs[arcId][next] = prev;
+        }
+    }
+}
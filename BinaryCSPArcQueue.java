@@ -0,0 +1,206 @@
+import java.util.Arrays;
+
+/**
+ * A propagation queue of arc ids for AC3.
+ * Arc ids come from BinaryConstraint.getArcId, so every arc of the instance is known up front.
+ * The queue is a circular int array with a bitset recording which arcs are queued.
+ * An arc that is already queued is not added again, so the queue never holds more than every arc once.
+ * When ordering by domain size, queued arcs are instead grouped by their supporting variable, and the variables are
+ * kept in buckets by the size of their domain, so the next arc is found without scanning the queue.
+ */
+public class BinaryCSPArcQueue {
+    private final int[] arcs;
+    private final long[] queued;
+    private int head;
+    private int length;
+
+    // The instance whose domain sizes order the arcs, or null to poll the oldest arc.
+    private BinaryCSP instance;
+    // The arcs queued with each supporting variable as a linked list in the order they were added, -1 terminated.
+    private int[] firstArc;
+    private int[] lastArc;
+    private int[] nextArc;
+    // The bucket each supporting variable is in, or -1 if none of its arcs are queued.
+    private int[] bucketOf;
+    // The supporting variables in each bucket as a doubly linked list, -1 terminated.
+    private int[] firstVar;
+    private int[] lastVar;
+    private int[] nextVar;
+    private int[] previousVar;
+    // No bucket below this one holds a variable.
+    private int smallestBucket;
+
+    // Counters for reporting how the queue was used.
+    long arcsQueued = 0; // The number of arcs added to the queue.
+    long duplicatesSuppressed = 0; // The number of arcs not added because they were already queued.
+    int longestQueue = 0; // The most arcs that were in the queue at once.
+
+    /**
+     * @param numberOfArcs The number of arc ids, i.e. twice the number of constraints.
+     */
+    public BinaryCSPArcQueue(int numberOfArcs) {
+        arcs = new int[Math.max(1, numberOfArcs)];
+        queued = new long[(numberOfArcs + 63) >>> 6];
+    }
+
+    /**
+     * Sets whether to poll the arc whose supporting variable has the smallest domain rather than the oldest arc.
+     * Only done while the queue is empty.
+     * @param instance The instance the arcs belong to, or null to poll the oldest arc.
+     */
+    public void setOrderByDomainSize(BinaryCSP instance) {
+        this.instance = instance;
+        if (instance != null && firstArc == null) {
+            int noVariables = instance.getNoVariables();
+            int maxDomainSize = 0;
+            for (int var = 0; var < noVariables; var++) {
+                maxDomainSize = Math.max(maxDomainSize, instance.getUB(var) - instance.getLB(var) + 1);
+            }
+            firstArc = new int[noVariables];
+            lastArc = new int[noVariables];
+            nextArc = new int[arcs.length];
+            bucketOf = new int[noVariables];
+            Arrays.fill(bucketOf, -1);
+            firstVar = new int[maxDomainSize + 1];
+            lastVar = new int[maxDomainSize + 1];
+            Arrays.fill(firstVar, -1);
+            nextVar = new int[noVariables];
+            previousVar = new int[noVariables];
+            smallestBucket = firstVar.length;
+        }
+    }
+
+    /**
+     * Adds an arc to the back of the queue unless it is already queued.
+     * @param arcId The id of the arc to add.
+     * @return Whether the arc was added.
+     */
+    public boolean add(int arcId) {
+        long bit = 1L << arcId;
+        if ((queued[arcId >>> 6] & bit) != 0) {
+            duplicatesSuppressed++;
+            if (instance != null) {
+                // The supporting domain may have shrunk since the arc was queued.
+                domainChanged(supportingVar(arcId));
+            }
+            return false;
+        }
+        queued[arcId >>> 6] |= bit;
+        if (instance != null) {
+            int var = supportingVar(arcId);
+            nextArc[arcId] = -1;
+            if (bucketOf[var] == -1) {
+                firstArc[var] = arcId;
+                addToBucket(var, instance.domains[var].size());
+            } else {
+                nextArc[lastArc[var]] = arcId;
+                domainChanged(var);
+            }
+            lastArc[var] = arcId;
+        } else {
+            int tail = head + length;
+            arcs[tail >= arcs.length ? tail - arcs.length : tail] = arcId;
+        }
+        length++;
+        arcsQueued++;
+        if (length > longestQueue) {
+            longestQueue = length;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the arcs a variable supports to the bucket of its domain size after the domain changed.
+     * Arcs added later are ordered by the new size anyway, but arcs already queued would keep the old one.
+     * @param var The supporting variable.
+     */
+    public void domainChanged(int var) {
+        if (instance != null && bucketOf[var] != -1) {
+            int size = instance.domains[var].size();
+            if (size != bucketOf[var]) {
+                removeFromBucket(var);
+                addToBucket(var, size);
+            }
+        }
+    }
+
+    /**
+     * Removes the next arc to revise from the queue.
+     * This is the oldest arc, or the oldest arc of the supporting variable with the smallest domain if ordering by
+     * domain size.
+     * @return The id of the arc.
+     */
+    public int poll() {
+        int arcId;
+        if (instance != null) {
+            while (firstVar[smallestBucket] == -1) {
+                smallestBucket++;
+            }
+            int var = firstVar[smallestBucket];
+            arcId = firstArc[var];
+            firstArc[var] = nextArc[arcId];
+            if (firstArc[var] == -1) {
+                removeFromBucket(var);
+            }
+        } else {
+            arcId = arcs[head];
+            head = head + 1 == arcs.length ? 0 : head + 1;
+        }
+        length--;
+        queued[arcId >>> 6] &= ~(1L << arcId);
+        return arcId;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Removes every arc from the queue, e.g. after a domain wipeout.
+     */
+    public void clear() {
+        while (length > 0) {
+            poll();
+        }
+    }
+
+    /**
+     * @param arcId The id of the arc.
+     * @return The variable whose values support the values of the variable the arc revises.
+     */
+    private int supportingVar(int arcId) {
+        BinaryConstraint constraint = instance.constraints.get(arcId >>> 1);
+        return constraint.getOtherVar(constraint.getArcVar(arcId));
+    }
+
+    private void addToBucket(int var, int size) {
+        bucketOf[var] = size;
+        nextVar[var] = -1;
+        if (firstVar[size] == -1) {
+            previousVar[var] = -1;
+            firstVar[size] = var;
+        } else {
+            previousVar[var] = lastVar[size];
+            nextVar[lastVar[size]] = var;
+        }
+        lastVar[size] = var;
+        if (size < smallestBucket) {
+            smallestBucket = size;
+        }
+    }
+
+    private void removeFromBucket(int var) {
+        int size = bucketOf[var];
+        if (previousVar[var] == -1) {
+            firstVar[size] = nextVar[var];
+        } else {
+            nextVar[previousVar[var]] = nextVar[var];
+        }
+        if (nextVar[var] == -1) {
+            lastVar[size] = previousVar[var];
+        } else {
+            previousVar[nextVar[var]] = previousVar[var];
+        }
+        bucketOf[var] = -1;
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class BinaryCSPFCSolver extends BinaryCSPSolver {
@@ -24,25 +25,239 @@ public class BinaryCSPFCSolver extends BinaryCSPSolver {
      * In MAC, all related arcs are checked. Not just arcs to the current one.
      */
     @Override
-    void enforceLocalConsistency(int var, boolean changed) throws EmptyDomainException {
-        reviseFutureArcs(var);
+    boolean enforceLocalConsistency(int var, boolean changed) {
+        return reviseFutureArcs(var);
     }
 
     @Override
     boolean prepareSolver() {
-        return true; // Nothing to prepare at the start of FC.
+        // Nothing to prepare at the start of FC, apart from the bookkeeping for backjumping.
+        if (backjumping && symmetryMode != SymmetryMode.NONE) {
+            throw new IllegalArgumentException("Symmetry breaking cannot be used with backjumping.");
+        }
+        if (backjumping && decomposeComponents) {
+            throw new IllegalArgumentException("Component decomposition cannot be used with backjumping.");
+        }
+        if (backjumping && searchMode == SearchMode.LDS) {
+            throw new IllegalArgumentException("LDS cannot be used with backjumping.");
+        }
+        if (backjumping && restartMode != RestartMode.NONE) {
+            throw new IllegalArgumentException("Restarts cannot be used with backjumping.");
+        }
+        if (backjumping) {
+            int noVariables = instance.getNoVariables();
+            int words = (noVariables + 63) >>> 6;
+            conflictSets = new long[noVariables][words];
+            pastFc = new long[noVariables][words];
+            depthVars = new int[noVariables];
+        }
+        return true;
+    }
+
+    @Override
+    protected void setOption(String option) throws IllegalArgumentException {
+        if (option.startsWith("backjumping=")) {
+            backjumping = Boolean.parseBoolean(option.substring("backjumping=".length()));
+        } else {
+            super.setOption(option);
+        }
+    }
+
+    // Whether to search with conflict-directed backjumping (FC-CBJ) instead of backtracking chronologically.
+    private boolean backjumping = false;
+
+    // Sets of search depths stored as bitsets, with one bit for each depth.
+    // conflictSets[d] holds the depths whose assignments are to blame for values of the variable at depth d failing.
+    // pastFc[var] holds the depths whose assignments pruned values from the domain of var by forward checking.
+    private long[][] conflictSets;
+    private long[][] pastFc;
+
+    // The variable chosen at each depth and the current depth when backjumping.
+    private int[] depthVars;
+    private int depth = 0;
+
+    // The number of backjumps that skipped at least one depth and the total number of depths skipped.
+    private int backjumps = 0;
+    private int depthsSkipped = 0;
+
+    /**
+     * Does a step of FC-CBJ if backjumping is on. Restarts are not used with backjumping.
+     */
+    @Override
+    protected void searchStep() {
+        if (!backjumping) {
+            super.searchStep();
+        } else if (descending) {
+            backjumpDescend();
+        } else {
+            rejectValue();
+        }
+    }
+
+    /**
+     * Records a solution if every variable is assigned, otherwise picks a variable for the current depth and tries a value.
+     * FC-CBJ tries every value in the domain of a variable in turn (d-way branching).
+     */
+    private void backjumpDescend() {
+        if (completeAssignments()) {
+            if (!showSolution() || (solutionsToFind > 0 && solutionsFound >= solutionsToFind)) {
+                finish(Status.SOLVED);
+                return;
+            }
+            // Blame the last assignment on every one before it so search goes back chronologically for more solutions.
+            int last = depth - 1;
+            for (int d = 0; d < last; d++) {
+                conflictSets[last][d >>> 6] |= 1L << d;
+            }
+            jumpBack(last);
+            return;
+        }
+
+        int var = selectVar();
+        depthVars[depth] = var;
+        // A state to rule out the values of var that have been tried.
+        enterNewState(-1);
+        tryValue();
+    }
+
+    /**
+     * Assigns the next value to the variable at the current depth and forward checks it.
+     * Search goes down a depth if no domain was wiped out and rejects the value on the next step otherwise.
+     */
+    private void tryValue() {
+        int var = depthVars[depth];
+        assign(var, selectVal(var));
+        descending = forwardCheck(var, depth);
+        if (descending) {
+            depth++;
+        }
+    }
+
+    /**
+     * Undoes the assignment at the current depth and rules out its value until search leaves this depth.
+     * If no value is left, search jumps straight back to the deepest assignment in the variable's conflict set.
+     * This is the union of the assignments that pruned its domain and the ones that caused its values to fail.
+     */
+    private void rejectValue() {
+        int var = depthVars[depth];
+        int val = instance.domains[var].first();
+        revertState();
+        clearPastFc(depth);
+        if (pruneDomain(var, val)) {
+            tryValue();
+            return;
+        }
+
+        // Every value failed, so jump back to the deepest assignment to blame.
+        long[] conflictSet = conflictSets[depth];
+        for (int i = 0; i < conflictSet.length; i++) {
+            conflictSet[i] |= pastFc[var][i];
+        }
+        int target = -1;
+        for (int i = conflictSet.length - 1; i >= 0 && target == -1; i--) {
+            if (conflictSet[i] != 0) {
+                target = 64 * i + 63 - Long.numberOfLeadingZeros(conflictSet[i]);
+            }
+        }
+        if (target != -1) {
+            // The target inherits the rest of the conflict set, as those assignments also contributed to this failure.
+            conflictSet[target >>> 6] &= ~(1L << target);
+            for (int i = 0; i < conflictSet.length; i++) {
+                conflictSets[target][i] |= conflictSet[i];
+            }
+        }
+        Arrays.fill(conflictSet, 0);
+        revertState();
+        jumpBack(target);
+    }
+
+    /**
+     * Undoes every depth between the current depth and a target depth, whose value is rejected on the next step.
+     * @param target The depth to jump back to, or -1 to finish searching.
+     */
+    private void jumpBack(int target) {
+        if (DEBUG_MODE) {
+            System.out.println("Backjumping from depth " + depth + " to depth " + target);
+        }
+        if (target == -1) {
+            finish(Status.EXHAUSTED);
+            return;
+        }
+        if (target < depth - 1) {
+            backjumps++;
+            depthsSkipped += depth - 1 - target;
+        }
+        while (depth > target + 1) {
+            depth--;
+            revertState();
+            clearPastFc(depth);
+            Arrays.fill(conflictSets[depth], 0);
+            revertState();
+        }
+        depth = target;
+        descending = false;
+    }
+
+    /**
+     * Revises the arcs of unassigned variables to the variable just assigned, recording which domains were pruned.
+     * If a domain is wiped out, the assignments that pruned it are added to the conflict set of the current depth.
+     * @param var The variable that was just assigned.
+     * @param depth The depth of the assignment.
+     * @return Whether no domain was wiped out.
+     */
+    private boolean forwardCheck(int var, int depth) {
+        Domain unassignedVars = instance.unassignedVars;
+        for (int futureVar = unassignedVars.first(); futureVar != Domain.NONE; futureVar = unassignedVars
+                .next(futureVar)) {
+            BinaryConstraint constraint = instance.getConstraint(futureVar, var);
+            if (constraint == null) {
+                continue;
+            }
+            int result = revise(constraint, futureVar);
+            if (result == CHANGED) {
+                pastFc[futureVar][depth >>> 6] |= 1L << depth;
+            } else if (result == WIPEOUT) {
+                long[] conflictSet = conflictSets[depth];
+                for (int i = 0; i < conflictSet.length; i++) {
+                    conflictSet[i] |= pastFc[futureVar][i];
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes an undone assignment from the sets of assignments that pruned each domain.
+     * @param depth The depth of the assignment.
+     */
+    private void clearPastFc(int depth) {
+        for (long[] varPastFc : pastFc) {
+            varPastFc[depth >>> 6] &= ~(1L << depth);
+        }
+    }
+
+    @Override
+    protected void printInfo() {
+        super.printInfo();
+        if (backjumping) {
+            System.out.println("Backjumped " + backjumps + " times, skipping " + depthsSkipped + " depths!");
+        }
     }
 
     /**
      * Revise all future arcs targeting this variable in order to enforce local arc consistency.
      * @param currentVar The variable that was just assigned.
-     * @throws EmptyDomainException If an arc revision resulted in a domain wipeout.
+     * @return Whether no arc revision resulted in a domain wipeout.
      */
-    private void reviseFutureArcs(int currentVar) throws EmptyDomainException {
+    private boolean reviseFutureArcs(int currentVar) {
         List<Arc> arcs = getFutureArcs(currentVar);
         for (Arc arc : arcs) {
-            revise(arc);
+            if (revise(arc) == WIPEOUT) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
@@ -52,7 +267,9 @@ public class BinaryCSPFCSolver extends BinaryCSPSolver {
      */
     private List<Arc> getFutureArcs(int currentVar) {
         List<Arc> arcs = new ArrayList<Arc>();
-        for (int futureVar : instance.varList) {
+        Domain unassignedVars = instance.unassignedVars;
+        for (int futureVar = unassignedVars.first(); futureVar != Domain.NONE; futureVar = unassignedVars
+                .next(futureVar)) {
             if (futureVar != currentVar) {
                 arcs.add(new Arc(futureVar, currentVar));
             }
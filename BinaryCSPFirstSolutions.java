@@ -0,0 +1,33 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A solution sink that keeps copies of the first solutions found, then asks search to stop.
+ */
+public class BinaryCSPFirstSolutions implements BinaryCSPSolutionSink {
+    // The number of solutions to keep. 0 = All solutions.
+    private final int solutionsToKeep;
+    private final List<int[]> solutions = new ArrayList<int[]>();
+
+    /**
+     * @param solutionsToKeep The number of solutions to keep before search stops. 0 = All solutions.
+     */
+    public BinaryCSPFirstSolutions(int solutionsToKeep) {
+        this.solutionsToKeep = solutionsToKeep;
+    }
+
+    @Override
+    public synchronized boolean accept(int[] solution) {
+        if (solutionsToKeep == 0 || solutions.size() < solutionsToKeep) {
+            solutions.add(solution.clone());
+        }
+        return solutionsToKeep == 0 || solutions.size() < solutionsToKeep;
+    }
+
+    /**
+     * @return The solutions kept, in the order they were found.
+     */
+    public synchronized List<int[]> getSolutions() {
+        return new ArrayList<int[]>(solutions);
+    }
+}
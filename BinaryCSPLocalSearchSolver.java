@@ -0,0 +1,336 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Searches for solutions with min-conflicts local search instead of backtracking, moving around complete assignments.
+ * Each step picks a variable violating a constraint and moves it to the value violating the fewest constraints.
+ * Moving a variable back to a value it just left is tabu for a number of steps, unless it would beat the best
+ * assignment since the last restart, and a small fraction of steps move to a random value instead (random walk).
+ * Search restarts from a new random assignment if it goes too long without beating its best.
+ * The number of constraints each value of each variable would violate is kept up to date as variables move, using the
+ * compiled support tables of the constraints, so choosing a value only reads a row of counts.
+ * Local search cannot prove that there are no solutions left, so it runs until it has found the solutions asked for
+ * (one if all are asked for) or reaches a limit. Each move or restart counts as a node explored, and the node limit
+ * defaults to DEFAULT_MOVE_LIMIT so that search stops even when there are fewer solutions than asked for.
+ */
+public class BinaryCSPLocalSearchSolver extends BinaryCSPSolver {
+    public BinaryCSPLocalSearchSolver(String instanceFilePath, int solutionsToFind, boolean debugMode) {
+        this(new BinaryCSPReader().readBinaryCSP(instanceFilePath), solutionsToFind, debugMode);
+    }
+
+    public BinaryCSPLocalSearchSolver(BinaryCSP instance, int solutionsToFind, boolean debugMode) {
+        // Variables and values are chosen by conflicts rather than by the selection modes.
+        super(instance, solutionsToFind, VarSelectMode.ASCENDING, ValSelectMode.ASCENDING, debugMode);
+    }
+
+    // The node limit used if none is given, as search would otherwise never stop when there are too few solutions.
+    static final int DEFAULT_MOVE_LIMIT = 10_000_000;
+
+    // The number of moves for which a variable may not go back to the value it left.
+    private int tabuTenure = 10;
+    // The chance of moving a variable to a random value instead of the best one.
+    private double walkProbability = 0.02;
+    // The number of moves without beating the best assignment since the last restart before restarting.
+    private int restartSteps = 10000;
+
+    // The value of each variable in the current assignment.
+    private int[] values;
+    // The values each variable can take, taken from its domain when search starts.
+    private int[][] domainValues;
+    // The number of constraints of each variable violated if it took each value, given the values of the others.
+    // Indexed by variable and then by value offset by its lower bound.
+    private int[][] conflicts;
+    // The move from which each variable may take each value again, indexed like conflicts.
+    private int[][] tabuUntil;
+
+    // The variables that violate a constraint and can move, stored as a sparse set.
+    // positions[var] is the index of var in conflicted, or -1 if it is not in the set.
+    private int[] conflicted;
+    private int[] positions;
+    private int conflictedCount = 0;
+
+    // The number of constraints violated by the current assignment, the fewest since the last restart and ever.
+    private int violations;
+    private int bestViolations;
+    private int fewestViolations = Integer.MAX_VALUE;
+    private int movesSinceBest = 0;
+
+    // The solutions found so far, so that only new ones are counted after restarting.
+    private final Set<IntBuffer> solutionsSeen = new HashSet<IntBuffer>();
+
+    @Override
+    boolean enforceLocalConsistency(int var, boolean changed) {
+        // Local search moves between complete assignments, so there is nothing to propagate.
+        return true;
+    }
+
+    @Override
+    boolean prepareSolver() {
+        if (random == null) {
+            random = new Random(0);
+        }
+        if (nodeLimit == 0) {
+            nodeLimit = DEFAULT_MOVE_LIMIT;
+        }
+        int noVariables = instance.getNoVariables();
+        values = new int[noVariables];
+        domainValues = new int[noVariables][];
+        conflicts = new int[noVariables][];
+        tabuUntil = new int[noVariables][];
+        conflicted = new int[noVariables];
+        positions = new int[noVariables];
+        Arrays.fill(positions, -1);
+        for (int var = 0; var < noVariables; var++) {
+            Domain domain = instance.domains[var];
+            if (domain.isEmpty()) {
+                return false;
+            }
+            domainValues[var] = new int[domain.size()];
+            int i = 0;
+            for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+                domainValues[var][i++] = val;
+            }
+            conflicts[var] = new int[instance.getUB(var) - instance.getLB(var) + 1];
+            tabuUntil[var] = new int[conflicts[var].length];
+        }
+        // A constraint violated by two variables that cannot move can never be satisfied, so there are no solutions.
+        for (BinaryConstraint constraint : instance.constraints) {
+            int firstVar = constraint.getFirstVar();
+            int secondVar = constraint.getSecondVar();
+            if (domainValues[firstVar].length == 1 && domainValues[secondVar].length == 1
+                    && !constraint.isSupported(firstVar, domainValues[firstVar][0], domainValues[secondVar][0])) {
+                return false;
+            }
+        }
+        randomAssignment();
+        return true;
+    }
+
+    @Override
+    protected void setOption(String option) throws IllegalArgumentException {
+        if (option.startsWith("tabuTenure=")) {
+            tabuTenure = Integer.parseInt(option.substring("tabuTenure=".length()));
+        } else if (option.startsWith("walkProbability=")) {
+            walkProbability = Double.parseDouble(option.substring("walkProbability=".length()));
+        } else if (option.startsWith("restartSteps=")) {
+            restartSteps = Integer.parseInt(option.substring("restartSteps=".length()));
+        } else if (option.startsWith("seed=") || option.startsWith("timeLimit=") || option.startsWith("nodeLimit=")) {
+            super.setOption(option);
+        } else {
+            // Options such as propagation, search, components and symmetry only apply to backtracking search.
+            throw new IllegalArgumentException("Local search does not use the option: " + option.split("=", 2)[0]);
+        }
+    }
+
+    /**
+     * Does one move, or records a solution if no constraint is violated.
+     */
+    @Override
+    protected void searchStep() {
+        if (violations == 0) {
+            foundSolution();
+            return;
+        }
+        if (movesSinceBest >= restartSteps || conflictedCount == 0) {
+            // Stuck, either for too long or because no variable violating a constraint can move.
+            restart();
+            return;
+        }
+
+        int var = conflicted[random.nextInt(conflictedCount)];
+        int val = random.nextDouble() < walkProbability ? randomOtherValue(var) : bestValue(var);
+        nodesExplored++;
+        move(var, val);
+        if (violations < bestViolations) {
+            bestViolations = violations;
+            fewestViolations = Math.min(fewestViolations, violations);
+            movesSinceBest = 0;
+        } else {
+            movesSinceBest++;
+        }
+    }
+
+    /**
+     * Passes the current assignment to the sink if it is a new solution, then restarts if more solutions are needed.
+     */
+    private void foundSolution() {
+        if (solutionsSeen.add(IntBuffer.wrap(values.clone()))) {
+            if (!acceptSolution(values) || solutionsFound >= Math.max(1, solutionsToFind)) {
+                finish(Status.SOLVED);
+                return;
+            }
+        }
+        restart();
+    }
+
+    /**
+     * Starts again from a new random assignment. Restarts count as moves, so the node limit bounds them too.
+     */
+    private void restart() {
+        nodesExplored++;
+        restartsDone++;
+        randomAssignment();
+    }
+
+    /**
+     * Finds the value of a variable other than its current one that would violate the fewest constraints.
+     * Tabu values are skipped unless they would beat the best assignment since the last restart.
+     * Ties are broken randomly.
+     * @param var The variable to move.
+     * @return The value to move to. A random one if every other value is tabu.
+     */
+    private int bestValue(int var) {
+        int lb = instance.getLB(var);
+        int[] counts = conflicts[var];
+        int current = values[var];
+        int bestVal = Domain.NONE;
+        int bestCount = Integer.MAX_VALUE;
+        int ties = 0;
+        for (int val : domainValues[var]) {
+            int count = counts[val - lb];
+            if (val == current || (tabuUntil[var][val - lb] > nodesExplored
+                    && violations - counts[current - lb] + count >= bestViolations)) {
+                continue;
+            }
+            if (count < bestCount) {
+                bestVal = val;
+                bestCount = count;
+                ties = 1;
+            } else if (count == bestCount && random.nextInt(++ties) == 0) {
+                bestVal = val;
+            }
+        }
+        return bestVal == Domain.NONE ? randomOtherValue(var) : bestVal;
+    }
+
+    /**
+     * @param var A variable with more than one value.
+     * @return A random value of the variable other than its current one.
+     */
+    private int randomOtherValue(int var) {
+        int[] vals = domainValues[var];
+        int val = vals[random.nextInt(vals.length - 1)];
+        return val == values[var] ? vals[vals.length - 1] : val;
+    }
+
+    /**
+     * Moves a variable to a new value, updating the conflict counts of its neighbours' values.
+     * Only the values supported by one of the old and new values but not the other change count.
+     * @param var The variable to move.
+     * @param val The value to move it to.
+     */
+    private void move(int var, int val) {
+        int lb = instance.getLB(var);
+        int oldVal = values[var];
+        violations += conflicts[var][val - lb] - conflicts[var][oldVal - lb];
+        values[var] = val;
+        tabuUntil[var][oldVal - lb] = nodesExplored + tabuTenure;
+        if (DEBUG_MODE) {
+            System.out.println("Moved var " + var + " from " + oldVal + " to " + val + ", violating " + violations
+                    + " constraints.");
+        }
+
+        for (BinaryConstraint constraint : instance.getConstraints(var)) {
+            int otherVar = constraint.getOtherVar(var);
+            long[] oldSupports = constraint.getSupports(var, oldVal);
+            long[] newSupports = constraint.getSupports(var, val);
+            int[] counts = conflicts[otherVar];
+            for (int word = 0; word < oldSupports.length; word++) {
+                long gained = oldSupports[word] & ~newSupports[word];
+                while (gained != 0) {
+                    counts[64 * word + Long.numberOfTrailingZeros(gained)]++;
+                    gained &= gained - 1;
+                }
+                long lost = newSupports[word] & ~oldSupports[word];
+                while (lost != 0) {
+                    counts[64 * word + Long.numberOfTrailingZeros(lost)]--;
+                    lost &= lost - 1;
+                }
+            }
+            updateConflicted(otherVar);
+        }
+        updateConflicted(var);
+    }
+
+    /**
+     * Gives every variable a random value from its domain and counts the conflicts from scratch.
+     */
+    private void randomAssignment() {
+        for (int var = 0; var < values.length; var++) {
+            values[var] = domainValues[var][random.nextInt(domainValues[var].length)];
+            Arrays.fill(conflicts[var], 0);
+            Arrays.fill(tabuUntil[var], 0);
+        }
+        for (BinaryConstraint constraint : instance.constraints) {
+            countConflicts(constraint, constraint.getFirstVar());
+            countConflicts(constraint, constraint.getSecondVar());
+        }
+        violations = 0;
+        for (int var = 0; var < values.length; var++) {
+            violations += conflicts[var][values[var] - instance.getLB(var)];
+            updateConflicted(var);
+        }
+        // Each violated constraint was counted by both of its variables.
+        violations /= 2;
+        bestViolations = violations;
+        fewestViolations = Math.min(fewestViolations, violations);
+        movesSinceBest = 0;
+    }
+
+    /**
+     * Adds a conflict to each value of a constraint's other variable not supported by the current value of a variable.
+     * @param constraint The constraint.
+     * @param var One of the constraint's variables.
+     */
+    private void countConflicts(BinaryConstraint constraint, int var) {
+        int otherVar = constraint.getOtherVar(var);
+        int[] counts = conflicts[otherVar];
+        long[] supports = constraint.getSupports(var, values[var]);
+        for (int word = 0; word < supports.length; word++) {
+            long unsupported = ~supports[word];
+            if (counts.length - 64 * word < 64) {
+                unsupported &= (1L << (counts.length - 64 * word)) - 1;
+            }
+            while (unsupported != 0) {
+                counts[64 * word + Long.numberOfTrailingZeros(unsupported)]++;
+                unsupported &= unsupported - 1;
+            }
+        }
+    }
+
+    /**
+     * Adds a variable to or removes it from the set of variables to move, depending on whether it violates a
+     * constraint. Variables with a single value are never added, as they cannot move.
+     * @param var The variable.
+     */
+    private void updateConflicted(int var) {
+        boolean violating = domainValues[var].length > 1 && conflicts[var][values[var] - instance.getLB(var)] > 0;
+        int position = positions[var];
+        if (violating && position == -1) {
+            positions[var] = conflictedCount;
+            conflicted[conflictedCount++] = var;
+        } else if (!violating && position != -1) {
+            int last = conflicted[--conflictedCount];
+            conflicted[position] = last;
+            positions[last] = position;
+            positions[var] = -1;
+        }
+    }
+
+    @Override
+    protected void printInfo() {
+        if (solutionsFound == 0) {
+            System.out.println("Failed to find a solution! Fewest constraints violated: " + fewestViolations);
+        } else {
+            System.out.println("Found " + solutionsFound + " solutions!");
+        }
+        System.out.println("Made " + nodesExplored + " moves!");
+        System.out.println("Restarted " + restartsDone + " times!");
+        if (status == Status.TIMEOUT || status == Status.LIMIT_REACHED || status == Status.CANCELLED) {
+            System.out.println("Search stopped early (" + status + ")! Only the search done so far is counted.");
+        }
+    }
+}
@@ -1,108 +1,135 @@
-import java.util.LinkedList;
-import java.util.Queue;
-
 public class BinaryCSPMACSolver extends BinaryCSPSolver {
     public BinaryCSPMACSolver(String instanceFilePath, int solutionsToFind, int varSelectMode, int valSelectMode,
             boolean debugMode) {
         super(instanceFilePath, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        queue = new BinaryCSPArcQueue(2 * instance.constraints.size());
     }
 
     public BinaryCSPMACSolver(BinaryCSP instance, int solutionsToFind, int varSelectMode, int valSelectMode,
             boolean debugMode) {
         super(instance, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        queue = new BinaryCSPArcQueue(2 * instance.constraints.size());
     }
 
     public BinaryCSPMACSolver(BinaryCSP instance, int solutionsToFind, BinaryCSPSolver.VarSelectMode varSelectMode,
             BinaryCSPSolver.ValSelectMode valSelectMode, boolean debugMode) {
         super(instance, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        queue = new BinaryCSPArcQueue(2 * instance.constraints.size());
     }
 
+    // The propagation queue of arc ids, reused by every call to AC3.
+    private final BinaryCSPArcQueue queue;
+
     @Override
-    void enforceLocalConsistency(int var, boolean changed) throws EmptyDomainException {
-        if (changed) {
-            macAC3(var);
-        }
+    boolean enforceLocalConsistency(int var, boolean changed) {
+        return !changed || macAC3(var);
     }
 
     @Override
     boolean prepareSolver() {
         // Ensure global arc consistency at the start.
-        try {
-            macAC3();
-        } catch (EmptyDomainException e) {
+        if (!macAC3()) {
             System.out.println("Initial problem is not arc consistent. Cannot find a solution.");
             return false;
         }
         return true;
     }
 
+    @Override
+    protected void setOption(String option) throws IllegalArgumentException {
+        if (option.startsWith("queueOrder=")) {
+            switch (option.substring("queueOrder=".length())) {
+                case "FIFO":
+                    queue.setOrderByDomainSize(null);
+                    break;
+                case "DOMAIN_SIZE":
+                    queue.setOrderByDomainSize(instance);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown queue order: " + option);
+            }
+        } else {
+            super.setOption(option);
+        }
+    }
+
     /**
      * AC3 with the entire graph.
-     * @return Whether any domains were changed.
-     * @throws EmptyDomainException If an arc revision resulted in a domain wipeout.
+     * @return Whether no domains were wiped out.
      */
-    private boolean macAC3() throws EmptyDomainException {
-        return macAC3(getArcs());
+    private boolean macAC3() {
+        for (BinaryConstraint constraint : instance.constraints) {
+            queueArcs(constraint);
+        }
+        return propagate();
     }
 
     /**
      * AC3 starting with one node.
      * @param var The variable of the start node.
-     * @return Whether any domains were changed.
-     * @throws EmptyDomainException If an arc revision resulted in a domain wipeout.
+     * @return Whether no domains were wiped out.
      */
-    private boolean macAC3(int var) throws EmptyDomainException {
-        return macAC3(getArcs(var));
+    private boolean macAC3(int var) {
+        for (BinaryConstraint constraint : instance.getConstraints(var)) {
+            queueArcs(constraint);
+        }
+        return propagate();
     }
 
     /**
      * Arc Consistency 3 in the MAC Algorithm.
-     * @param queue The propagation queue of arcs to check.
-     * @return Whether any domains were changed.
-     * @throws EmptyDomainException If an arc revision resulted in a domain wipeout.
+     * Revises arcs from the propagation queue until it is empty.
+     * @return Whether no domains were wiped out.
      */
-    private boolean macAC3(Queue<Arc> queue) throws EmptyDomainException {
+    private boolean propagate() {
         // Keep checking all arcs until the queue is empty.
-        boolean changed = false;
         while (!queue.isEmpty()) {
             // Check the arc for support and prune the domain of the first value for any unsupported values.
-            Arc arc = queue.poll();
-            if (revise(arc)) {
-                changed = true; // 
-                queue.addAll(getTargetedArcs(arc));
+            int arcId = queue.poll();
+            BinaryConstraint constraint = instance.constraints.get(arcId >>> 1);
+            int var = constraint.getArcVar(arcId);
+            int result = revise(constraint, var);
+            if (result == WIPEOUT) {
+                // Leave the queue empty for the next propagation.
+                queue.clear();
+                return false;
+            }
+            if (result == CHANGED) {
+                // Arcs var supports that are already queued, including the one not queued again below, move up.
+                queue.domainChanged(var);
+                queueTargetedArcs(var, constraint.getOtherVar(var));
             }
         }
-        return changed;
+        return true;
     }
 
     /**
-    * Gets all the arcs of the instance's graph of variables (nodes) and constraints (edges).
-    * @return A queue of all arcs in the instance's graph.
-    */
-    protected Queue<Arc> getArcs() {
-        Queue<Arc> queue = new LinkedList<Arc>();
-        for (BinaryConstraint constraint : instance.constraints) {
-            createArcs(constraint, queue);
-        }
-        return queue;
+     * Queues both arcs of a constraint.
+     * @param constraint The constraint to queue the arcs of.
+     */
+    private void queueArcs(BinaryConstraint constraint) {
+        queue.add(constraint.getArcId(constraint.getFirstVar()));
+        queue.add(constraint.getArcId(constraint.getSecondVar()));
     }
 
     /**
-     * Gets all the arcs targeting a given variable / node.
-     * @param arc An arc containing the target variable as well as another variable to ignore.
-     * @return A queue of arcs targeting the given variable.
+     * Queues all the arcs targeting a given variable / node.
+     * @param var The target variable.
+     * @param ignoredVar A variable whose arc to the target should not be queued.
      */
-    protected Queue<Arc> getTargetedArcs(Arc arc) {
-        Queue<Arc> queue = new LinkedList<Arc>();
-        for (BinaryConstraint constraint : instance.constraints) {
-            if (constraint.containsVar(arc.getVal1())) {
-                int otherVar = (constraint.getFirstVar() == arc.getVal1()) ? constraint.getSecondVar()
-                        : constraint.getFirstVar();
-                if (otherVar != arc.getVal2()) {
-                    queue.add(new Arc(otherVar, arc.getVal1()));
-                }
+    private void queueTargetedArcs(int var, int ignoredVar) {
+        for (BinaryConstraint constraint : instance.getConstraints(var)) {
+            int otherVar = constraint.getOtherVar(var);
+            if (otherVar != ignoredVar) {
+                queue.add(constraint.getArcId(otherVar));
             }
         }
-        return queue;
+    }
+
+    @Override
+    protected void printInfo() {
+        super.printInfo();
+        System.out.println("Queued " + queue.arcsQueued + " arcs, suppressing " + queue.duplicatesSuppressed
+                + " duplicates! Longest queue: " + queue.longestQueue + " arcs.");
     }
 }
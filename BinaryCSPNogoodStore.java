@@ -0,0 +1,137 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A store of nogoods recorded when restarting search.
+ * Each nogood is a set of assignments var = val that cannot all hold in a solution.
+ * Nogoods are stored as (var, val) pairs in an int array, with the two watched assignments in the first two pairs.
+ * A nogood only needs checking once one of its watched assignments has been made.
+ * Watches are not undone on backtracking as unassigning a variable cannot make a nogood fire.
+ */
+public class BinaryCSPNogoodStore {
+    private final BinaryCSPSolver solver;
+
+    // The nogoods watching each assignment, indexed by the offset of the variable plus the value minus its lower bound.
+    private final List<List<int[]>> watches;
+    private final int[] offsets;
+
+    // The number of nogoods stored.
+    private int size;
+
+    // The number of values pruned by nogoods.
+    long valuesPruned = 0;
+
+    /**
+     * @param solver The solver whose assignments the nogoods are checked against.
+     */
+    public BinaryCSPNogoodStore(BinaryCSPSolver solver) {
+        this.solver = solver;
+        BinaryCSP instance = solver.instance;
+        offsets = new int[instance.getNoVariables()];
+        int numberOfValues = 0;
+        for (int var = 0; var < offsets.length; var++) {
+            offsets[var] = numberOfValues;
+            numberOfValues += instance.getUB(var) - instance.getLB(var) + 1;
+        }
+        watches = new ArrayList<List<int[]>>(numberOfValues);
+        for (int i = 0; i < numberOfValues; i++) {
+            watches.add(new ArrayList<int[]>());
+        }
+    }
+
+    /**
+     * Adds a nogood to the store. Nogoods of a single assignment should be pruned from the domains instead.
+     * No assignment of the nogood may have been made yet, e.g. the solver is back at the starting state.
+     * @param nogood The nogood as (var, val) pairs with at least two pairs.
+     */
+    public void add(int[] nogood) {
+        watches.get(index(nogood[0], nogood[1])).add(nogood);
+        watches.get(index(nogood[2], nogood[3])).add(nogood);
+        size++;
+    }
+
+    /**
+     * Checks the nogoods watching an assignment that has just been made.
+     * Each one moves its watch to another assignment that has not been made.
+     * If there is none, the other watched assignment is the last one left, so its value is pruned and propagated.
+     * @param var The variable that was assigned.
+     * @param val The value it was assigned.
+     * @return Whether no nogood had all of its assignments made and pruning did not wipe out a domain.
+     */
+    public boolean propagate(int var, int val) {
+        List<int[]> watching = watches.get(index(var, val));
+        int i = 0;
+        while (i < watching.size()) {
+            int[] nogood = watching.get(i);
+            // Keep the assignment just made in the second pair.
+            if (nogood[0] == var && nogood[1] == val) {
+                swapPairs(nogood, 0, 1);
+            }
+
+            // If the other watched value is already pruned, the nogood cannot fire.
+            int otherVar = nogood[0];
+            int otherVal = nogood[1];
+            if (!solver.instance.domains[otherVar].contains(otherVal)) {
+                i++;
+                continue;
+            }
+
+            // Look for another assignment that has not been made to watch instead.
+            boolean moved = false;
+            for (int pair = 2; pair < nogood.length / 2; pair++) {
+                if (!isMade(nogood[2 * pair], nogood[2 * pair + 1])) {
+                    swapPairs(nogood, 1, pair);
+                    watches.get(index(nogood[2], nogood[3])).add(nogood);
+                    watching.set(i, watching.get(watching.size() - 1));
+                    watching.remove(watching.size() - 1);
+                    moved = true;
+                    break;
+                }
+            }
+            if (moved) {
+                continue;
+            }
+
+            // Every other assignment has been made, so the last one must not be.
+            if (isMade(otherVar, otherVal)) {
+                return false;
+            }
+            valuesPruned++;
+            if (!solver.pruneDomain(otherVar, otherVal) || !solver.enforceLocalConsistency(otherVar, true)) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of nogoods stored.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether an assignment has been made by the search.
+     * @param var The variable.
+     * @param val The value.
+     * @return Whether var is assigned and val is the value it was assigned.
+     */
+    private boolean isMade(int var, int val) {
+        return !solver.instance.unassignedVars.contains(var) && solver.instance.domains[var].contains(val);
+    }
+
+    private int index(int var, int val) {
+        return offsets[var] + val - solver.instance.getLB(var);
+    }
+
+    private static void swapPairs(int[] nogood, int pair1, int pair2) {
+        int var = nogood[2 * pair1];
+        int val = nogood[2 * pair1 + 1];
+        nogood[2 * pair1] = nogood[2 * pair2];
+        nogood[2 * pair1 + 1] = nogood[2 * pair2 + 1];
+        nogood[2 * pair2] = var;
+        nogood[2 * pair2 + 1] = val;
+    }
+}
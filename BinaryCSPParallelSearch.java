@@ -0,0 +1,378 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Searches for solutions across several threads, with each task running a normal solver on its own copy of the instance.
+ * By default the search is split with work stealing.
+ * When a solver branches on var = val while other threads are short of work, the right branch var != val is split off
+ * as a new task with a copy of the current domains, and the solver only explores the left branch itself.
+ * Idle threads steal these tasks from the pool.
+ * With a decomposition depth, embarrassingly parallel search (EPS) is used instead.
+ * The instance is first decomposed into every consistent assignment of that many variables, found by propagating
+ * each one as search would. These subproblems are then solved independently by the pool.
+ * Either way, the statistics of every solver are added up at the end.
+ */
+public class BinaryCSPParallelSearch {
+    // Splitting stops once a thread has this many tasks queued that no other thread has stolen yet.
+    private static final int SURPLUS_TASKS = 2;
+
+    // Subproblems with fewer unassigned variables than this are searched without splitting further.
+    private static final int MIN_SPLIT_VARIABLES = 4;
+
+    private final int threads;
+    private final int solutionsToFind;
+
+    // The number of variables assigned by each subproblem of EPS, or 0 to split with work stealing.
+    private int decompositionDepth = 0;
+
+    // Creates a solver for a subproblem. The solver should be set to find all solutions.
+    private final Function<BinaryCSP, BinaryCSPSolver> solverFactory;
+
+    // Solutions claimed so far when a limit is set. All solvers stop once the limit is reached.
+    private final AtomicLong solutionsClaimed = new AtomicLong();
+    private volatile boolean stopped = false;
+
+    // Statistics added up from every solver.
+    private final LongAdder solutionsFound = new LongAdder();
+    private final LongAdder symmetricSolutionsFound = new LongAdder();
+    private final LongAdder nodesExplored = new LongAdder();
+    private final LongAdder revisionsDone = new LongAdder();
+    private final LongAdder subproblems = new LongAdder();
+    long timeTaken = 0l;
+
+    // Whether the solvers break symmetries, so solutions found stand for more than one solution.
+    private volatile boolean symmetryBroken = false;
+
+    // The System.nanoTime() every solver must stop by if they have a time limit, taken from when the first one starts.
+    private long deadline = 0l;
+
+    // Whether the subproblems solved were given rather than found by decomposing or splitting the search.
+    private boolean givenSubproblems = false;
+
+    // Why search stopped early if a solver was cancelled or reached a limit, stopping the others. Null if it did not.
+    private volatile BinaryCSPSolver.Status earlyStop;
+
+    /**
+     * @param threads The number of threads to search with.
+     * @param solutionsToFind The number of solutions to find before stopping. 0 = All solutions.
+     * @param solverFactory Creates a solver for a copy of the instance, with every option applied.
+     */
+    public BinaryCSPParallelSearch(int threads, int solutionsToFind,
+            Function<BinaryCSP, BinaryCSPSolver> solverFactory) {
+        this.threads = threads;
+        this.solutionsToFind = solutionsToFind;
+        this.solverFactory = solverFactory;
+    }
+
+    /**
+     * Sets the number of variables assigned by each subproblem, switching from work stealing to EPS.
+     * @param decompositionDepth The number of variables, or 0 to split with work stealing.
+     */
+    public void setDecompositionDepth(int decompositionDepth) {
+        this.decompositionDepth = decompositionDepth;
+    }
+
+    /**
+     * Searches an instance and prints the statistics of every solver added up.
+     * @param instance The instance to solve. It is copied, so it is left unchanged.
+     */
+    public void solve(BinaryCSP instance) {
+        Instant start = Instant.now();
+        if (decompositionDepth > 0) {
+            solveSubproblems(instance, decompose(instance));
+        } else {
+            checkSolver(solverFactory.apply(instance.copy()));
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new SubproblemTask(instance.copy(), -1, 0, null));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        timeTaken = Duration.between(start, Instant.now()).toMillis();
+        printInfo();
+        System.out.println("Time taken: " + timeTaken + "ms");
+    }
+
+    /**
+     * Solves subproblems of an instance independently across the threads, e.g. ones saved from an earlier decompose,
+     * and prints the statistics of every solver added up.
+     * @param instance The instance the subproblems are of. Each subproblem is solved on its own copy.
+     * @param subproblems The subproblems to solve. Their solutions should not overlap.
+     * @throws IllegalArgumentException If the solvers are set up in a way that cannot be searched in parallel, or a
+     * subproblem assigns a variable not in the instance.
+     */
+    public void solve(BinaryCSP instance, List<BinaryCSPSubproblem> subproblems) throws IllegalArgumentException {
+        Instant start = Instant.now();
+        givenSubproblems = true;
+        for (BinaryCSPSubproblem subproblem : subproblems) {
+            subproblem.check(instance);
+        }
+        checkSolver(solverFactory.apply(instance.copy()));
+        solveSubproblems(instance, subproblems);
+        timeTaken = Duration.between(start, Instant.now()).toMillis();
+        printInfo();
+        System.out.println("Time taken: " + timeTaken + "ms");
+    }
+
+    /**
+     * Solves subproblems of an instance independently across the threads, once the solvers have been checked.
+     * @param instance The instance the subproblems are of. Each subproblem is solved on its own copy.
+     * @param subproblems The subproblems to solve.
+     */
+    private void solveSubproblems(BinaryCSP instance, List<BinaryCSPSubproblem> subproblems) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<SubproblemTask> tasks = new ArrayList<SubproblemTask>();
+            for (BinaryCSPSubproblem subproblem : subproblems) {
+                SubproblemTask task = new SubproblemTask(instance.copy(), -1, 0, subproblem);
+                tasks.add(task);
+                pool.execute(task);
+            }
+            for (SubproblemTask task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Decomposes an instance into subproblems by assigning decompositionDepth variables in every consistent way.
+     * Variables are chosen by the selection mode of the solvers and each assignment is propagated.
+     * Assignments that wipe out a domain are left out, and subproblems that are already solved can be shallower.
+     * @param instance The instance to decompose. It is copied, so it is left unchanged.
+     * @return The subproblems, which between them cover every solution once.
+     * @throws IllegalArgumentException If the solvers are set up in a way that cannot be searched in parallel.
+     */
+    public List<BinaryCSPSubproblem> decompose(BinaryCSP instance) throws IllegalArgumentException {
+        List<BinaryCSPSubproblem> subproblems = new ArrayList<BinaryCSPSubproblem>();
+        BinaryCSPSolver solver = solverFactory.apply(instance.copy());
+        checkSolver(solver);
+        // Time spent decomposing counts towards the time limit.
+        if (solver.timeLimit > 0) {
+            solver.deadline = deadline(solver.timeLimit);
+        }
+        if (solver.start()) {
+            decompose(solver, new int[decompositionDepth], new int[decompositionDepth], 0, subproblems);
+        }
+        nodesExplored.add(solver.nodesExplored);
+        revisionsDone.add(solver.revisionsDone);
+        return subproblems;
+    }
+
+    /**
+     * Assigns each value of the next variable in turn and decomposes the rest, d-way branching up to the depth.
+     * @param solver The solver whose domains hold the assignments made so far.
+     * @param vars The variables assigned so far.
+     * @param vals The values assigned so far.
+     * @param depth The number of variables assigned so far.
+     * @param subproblems The list to add the subproblems to.
+     */
+    private void decompose(BinaryCSPSolver solver, int[] vars, int[] vals, int depth,
+            List<BinaryCSPSubproblem> subproblems) {
+        if (depth == decompositionDepth || solver.completeAssignments()) {
+            subproblems.add(new BinaryCSPSubproblem(Arrays.copyOf(vars, depth), Arrays.copyOf(vals, depth)));
+            return;
+        }
+        int var = solver.selectVar();
+        Domain domain = solver.instance.domains[var];
+        int[] values = new int[domain.size()];
+        int i = 0;
+        for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+            values[i++] = val;
+        }
+        for (int val : values) {
+            vars[depth] = var;
+            vals[depth] = val;
+            if (solver.assignFixed(var, val)) {
+                decompose(solver, vars, vals, depth + 1, subproblems);
+            }
+            solver.revertState();
+        }
+    }
+
+    /**
+     * Checks that a solver made by the factory can search part of the tree on its own, once before search starts.
+     * @param solver The solver.
+     * @throws IllegalArgumentException If the solver uses restarts, AUTO symmetry breaking or LDS.
+     */
+    private void checkSolver(BinaryCSPSolver solver) throws IllegalArgumentException {
+        if (solver.restartMode != BinaryCSPSolver.RestartMode.NONE) {
+            throw new IllegalArgumentException("Restarts cannot be used with parallel search.");
+        }
+        // AUTO symmetry breaking depends on the values used by the decisions above the subproblem.
+        if (solver.symmetryMode == BinaryCSPSolver.SymmetryMode.AUTO) {
+            throw new IllegalArgumentException("AUTO symmetry breaking cannot be used with parallel search.");
+        }
+        // LDS revisits the top of the tree in every iteration, so its branches cannot be handed out once.
+        if (solver.searchMode == BinaryCSPSolver.SearchMode.LDS) {
+            throw new IllegalArgumentException("LDS cannot be used with parallel search.");
+        }
+        symmetryBroken = solver.symmetryMode != BinaryCSPSolver.SymmetryMode.NONE;
+    }
+
+    /**
+     * Works out the deadline shared by every solver, so a time limit covers the whole search rather than each subproblem.
+     * @param timeLimit The time limit of the solvers in milliseconds.
+     * @return The System.nanoTime() to stop by.
+     */
+    private synchronized long deadline(long timeLimit) {
+        if (deadline == 0) {
+            deadline = System.nanoTime() + timeLimit * 1_000_000l;
+        }
+        return deadline;
+    }
+
+    /**
+     * @return Why search stopped early, or null if it ran until it was solved or exhausted.
+     */
+    public BinaryCSPSolver.Status getEarlyStop() {
+        return earlyStop;
+    }
+
+    /**
+     * Prints the statistics of every solver added up.
+     */
+    private void printInfo() {
+        if (solutionsFound.sum() == 0) {
+            System.out.println("Failed to find a solution!");
+        } else if (symmetryBroken) {
+            System.out.println("Found " + solutionsFound.sum() + " solutions up to symmetry, standing for "
+                    + symmetricSolutionsFound.sum() + " solutions!");
+        } else {
+            System.out.println("Found " + solutionsFound.sum() + " solutions!");
+        }
+        System.out.println("Explored " + nodesExplored.sum() + " nodes!");
+        System.out.println("Performed " + revisionsDone.sum() + " arc revisions!");
+        if (givenSubproblems) {
+            System.out.println("Solved " + subproblems.sum() + " given subproblems across " + threads + " threads!");
+        } else if (decompositionDepth > 0) {
+            System.out.println("Decomposed the search into " + subproblems.sum() + " subproblems of depth "
+                    + decompositionDepth + " across " + threads + " threads!");
+        } else {
+            System.out.println("Split the search into " + subproblems.sum() + " subproblems across " + threads
+                    + " threads!");
+        }
+        if (earlyStop != null) {
+            System.out.println("Search stopped early (" + earlyStop + ")! Only the search done so far is counted.");
+        }
+    }
+
+    /**
+     * Searches a subproblem with its own solver, then waits for the subproblems split off from it.
+     */
+    class SubproblemTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private BinaryCSP instance;
+        // The right branch var != val to apply before searching, or var = -1 for none.
+        private final int var;
+        private final int val;
+        // The assignments of an EPS subproblem to make before searching, or null for none.
+        private final BinaryCSPSubproblem assignments;
+        private final List<SubproblemTask> children = new ArrayList<SubproblemTask>();
+
+        SubproblemTask(BinaryCSP instance, int var, int val, BinaryCSPSubproblem assignments) {
+            this.instance = instance;
+            this.var = var;
+            this.val = val;
+            this.assignments = assignments;
+        }
+
+        @Override
+        protected void compute() {
+            subproblems.increment();
+            if (!stopped) {
+                BinaryCSPSolver solver = solverFactory.apply(instance);
+                solver.subproblem = this;
+                if (solver.timeLimit > 0) {
+                    solver.deadline = deadline(solver.timeLimit);
+                }
+                // A sink asking one solver to stop stops every solver. Counting never asks to stop, and is left as it
+                // is so that solvers splitting into components can count without putting solutions together.
+                BinaryCSPSolutionSink sink = solver.solutionSink;
+                if (sink != BinaryCSPSolutionSink.COUNTING) {
+                    solver.solutionSink = solution -> {
+                        if (!sink.accept(solution)) {
+                            stopped = true;
+                        }
+                        return !stopped;
+                    };
+                }
+                boolean consistent = solver.start();
+                if (consistent && var != -1) {
+                    // The right branch is the same as the unassign done by backtracking, so it counts as a node.
+                    solver.nodesExplored++;
+                    consistent = solver.pruneDomain(var, val) && solver.enforceLocalConsistency(var, true);
+                }
+                if (consistent && assignments != null) {
+                    consistent = assignments.apply(solver);
+                }
+                if (consistent) {
+                    while (!stopped && solver.step()) {
+                    }
+                }
+                // Node and revision limits apply to each solver, but any solver stopping early stops the search.
+                BinaryCSPSolver.Status status = solver.getStatus();
+                if (status == BinaryCSPSolver.Status.TIMEOUT || status == BinaryCSPSolver.Status.LIMIT_REACHED
+                        || status == BinaryCSPSolver.Status.CANCELLED) {
+                    earlyStop = status;
+                    stopped = true;
+                }
+                solutionsFound.add(solver.solutionsFound);
+                symmetricSolutionsFound.add(solver.symmetricSolutionsFound);
+                nodesExplored.add(solver.nodesExplored);
+                revisionsDone.add(solver.revisionsDone);
+            }
+            // The copy of the domains is no longer needed while waiting for the children.
+            instance = null;
+            for (int i = children.size() - 1; i >= 0; i--) {
+                children.get(i).join();
+            }
+        }
+
+        /**
+         * Called by the solver of this task before it branches on var = val.
+         * Splits off the right branch var != val as a new task if threads are short of work.
+         * @param solver The solver about to branch.
+         * @param var The variable being branched on.
+         * @param val The value being branched on.
+         * @return Whether the right branch was split off, in which case the solver must not explore it.
+         */
+        boolean split(BinaryCSPSolver solver, int var, int val) {
+            BinaryCSP current = solver.instance;
+            if (stopped || decompositionDepth > 0 || givenSubproblems || getSurplusQueuedTaskCount() >= SURPLUS_TASKS
+                    || current.unassignedVars.size() < MIN_SPLIT_VARIABLES || current.domains[var].size() < 2) {
+                return false;
+            }
+            SubproblemTask rightBranch = new SubproblemTask(current.copy(), var, val, null);
+            children.add(rightBranch);
+            rightBranch.fork();
+            return true;
+        }
+
+        /**
+         * Called by the solver of this task when it finds a solution, before showing it.
+         * @return Whether the solution should be shown and counted, i.e. the solution limit had not been reached.
+         */
+        boolean claimSolution() {
+            if (solutionsToFind == 0) {
+                return true;
+            }
+            long claimed = solutionsClaimed.incrementAndGet();
+            if (claimed >= solutionsToFind) {
+                stopped = true;
+            }
+            return claimed <= solutionsToFind;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Races every solver type and variable / value selection mode against each other on one instance.
+ * Each configuration solves its own copy of the instance, keeping its solutions to itself.
+ * There is a thread for each processor, and the configurations take turns on them in time slices: a configuration runs
+ * until it is paused at the end of its slice, then goes to the back of the queue. Every configuration makes progress
+ * however few processors there are, so the race is fair even on one.
+ * Only the winner's solutions are passed on to the solution sink.
+ * Configurations looking for all solutions write them to a temporary file each, and the winner's file is streamed to
+ * the sink, so solutions are never all held in memory and the winner does not have to search again.
+ * The first configuration to finish wins and the others are cancelled, stopping after the step they are on.
+ * The best configuration varies between families of instances, so racing them gives the best time to a solution.
+ */
+public class BinaryCSPPortfolio {
+    static final String[] solverTypes = { "MAC", "FC", "AC6" };
+
+    // How long a configuration runs before it is paused so the next one can take a turn.
+    static final long SLICE_MILLIS = 10l;
+
+    private final List<BinaryCSPSolver> solvers = new ArrayList<BinaryCSPSolver>();
+    private final List<String> configurations = new ArrayList<String>();
+
+    private final int noVariables;
+    private final int solutionsToFind;
+
+    // Where the winner's solutions go. Prints them by default.
+    BinaryCSPSolutionSink solutionSink = BinaryCSPSolutionSink.PRINTING;
+
+    // The configuration that won the race and the time taken, once solved.
+    String winningConfiguration;
+    long timeTaken = 0l;
+
+    /**
+     * Creates a solver for every configuration.
+     * @param instance The instance to solve. Each configuration solves its own copy.
+     * @param solutionsToFind The number of solutions to find. 0 = All solutions.
+     * @param debugMode Whether to print out solver logic.
+     * @param options Optional settings of the form key=value, applied to every configuration that accepts them.
+     * @throws IllegalArgumentException If an option is not accepted by any configuration.
+     */
+    public BinaryCSPPortfolio(BinaryCSP instance, int solutionsToFind, boolean debugMode, List<String> options)
+            throws IllegalArgumentException {
+        this.noVariables = instance.getNoVariables();
+        this.solutionsToFind = solutionsToFind;
+        for (String solverType : solverTypes) {
+            for (BinaryCSPSolver.VarSelectMode varSelectMode : BinaryCSPSolver.VarSelectMode.values()) {
+                for (BinaryCSPSolver.ValSelectMode valSelectMode : BinaryCSPSolver.ValSelectMode.values()) {
+                    BinaryCSPSolver solver = BinaryCSPSolver.createSolver(solverType, instance.copy(), solutionsToFind,
+                            varSelectMode.ordinal(), valSelectMode.ordinal(), debugMode, List.of());
+                    solver.quiet = true;
+                    solvers.add(solver);
+                    configurations.add(solverType + " / " + varSelectMode + " / " + valSelectMode);
+                }
+            }
+        }
+
+        // Options such as queueOrder only apply to some solver types.
+        for (String option : options) {
+            boolean accepted = false;
+            for (BinaryCSPSolver solver : solvers) {
+                try {
+                    solver.setOption(option);
+                    solver.options.add(option);
+                    accepted = true;
+                } catch (IllegalArgumentException e) {
+                    // This solver type does not have the option.
+                }
+            }
+            if (!accepted) {
+                throw new IllegalArgumentException("No configuration accepts the option: " + option);
+            }
+        }
+    }
+
+    /**
+     * Races the configurations, then prints the solutions and information of the winner.
+     */
+    public void solve() {
+        Instant start = Instant.now();
+        // The configurations only keep the solutions asked for in memory. There is nothing to keep when solutions are
+        // only counted, and all solutions are written to a temporary file for each configuration instead.
+        List<Path> spools = new ArrayList<Path>();
+        try {
+            for (BinaryCSPSolver solver : solvers) {
+                if (solutionSink == BinaryCSPSolutionSink.COUNTING) {
+                    solver.solutionSink = BinaryCSPSolutionSink.COUNTING;
+                } else if (solutionsToFind > 0) {
+                    solver.solutionSink = new BinaryCSPFirstSolutions(solutionsToFind);
+                } else {
+                    Path spool = Files.createTempFile("portfolio", ".bin");
+                    spools.add(spool);
+                    solver.solutionSink = new BinaryCSPSolutionWriter(spool.toString(),
+                            BinaryCSPSolutionWriter.Format.BINARY);
+                }
+            }
+
+            int index = race();
+            timeTaken = Duration.between(start, Instant.now()).toMillis();
+            if (index == -1) {
+                System.err.println("No configuration finished the search!");
+                return;
+            }
+            BinaryCSPSolver winner = solvers.get(index);
+            winningConfiguration = configurations.get(index);
+
+            if (winner.solutionSink instanceof BinaryCSPFirstSolutions) {
+                for (int[] solution : ((BinaryCSPFirstSolutions) winner.solutionSink).getSolutions()) {
+                    solutionSink.accept(solution);
+                }
+            } else if (winner.solutionSink instanceof BinaryCSPSolutionWriter) {
+                for (BinaryCSPSolver solver : solvers) {
+                    solver.solutionSink.close();
+                }
+                streamSolutions(spools.get(index));
+            }
+            timeTaken = Duration.between(start, Instant.now()).toMillis();
+            System.out.println("Portfolio of " + solvers.size() + " configurations won by " + winningConfiguration + "!");
+            winner.printInfo();
+            System.out.println("Time taken: " + timeTaken + "ms");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create a temporary solution file.", e);
+        } finally {
+            for (BinaryCSPSolver solver : solvers) {
+                solver.solutionSink.close();
+            }
+            for (Path spool : spools) {
+                spool.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Runs the configurations in time slices across a thread for each processor until one finishes its search.
+     * A configuration that is cancelled or reaches a limit drops out of the race.
+     * @return The index of the winning configuration, or -1 if none finished.
+     */
+    private int race() {
+        ConcurrentLinkedQueue<Integer> queue = new ConcurrentLinkedQueue<Integer>();
+        for (int i = 0; i < solvers.size(); i++) {
+            queue.add(i);
+        }
+        AtomicInteger winner = new AtomicInteger(-1);
+        // Search is CPU bound, so more threads than processors would only slow each configuration down.
+        int threads = Math.min(solvers.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(() -> {
+                Integer index;
+                while (winner.get() == -1 && (index = queue.poll()) != null) {
+                    BinaryCSPSolver solver = solvers.get(index);
+                    ScheduledFuture<?> pause = timer.schedule(solver::pause, SLICE_MILLIS, TimeUnit.MILLISECONDS);
+                    solver.resume();
+                    pause.cancel(false);
+                    if (!solver.isFinished()) {
+                        queue.add(index);
+                    } else if (solver.getStatus() == BinaryCSPSolver.Status.SOLVED
+                            || solver.getStatus() == BinaryCSPSolver.Status.EXHAUSTED) {
+                        if (winner.compareAndSet(-1, index)) {
+                            // Stop the configurations running on the other threads.
+                            for (BinaryCSPSolver other : solvers) {
+                                if (other != solver) {
+                                    other.cancel();
+                                }
+                            }
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+
+        try {
+            es.invokeAll(workers);
+        } catch (InterruptedException e) {
+            System.err.println("Portfolio was interrupted!");
+        } finally {
+            for (BinaryCSPSolver solver : solvers) {
+                solver.cancel();
+            }
+            es.shutdown();
+            timer.shutdownNow();
+        }
+        return winner.get();
+    }
+
+    /**
+     * Passes the solutions written to a temporary file by a configuration on to the solution sink.
+     * @param spool The file, holding each value of each solution as a 4-byte int.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    private void streamSolutions(Path spool) throws UncheckedIOException {
+        int[] solution = new int[noVariables];
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(spool.toFile()), 1 << 16))) {
+            long solutions = Files.size(spool) / (4l * noVariables);
+            for (long i = 0; i < solutions; i++) {
+                for (int var = 0; var < noVariables; var++) {
+                    solution[var] = input.readInt();
+                }
+                if (!solutionSink.accept(solution)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read temporary solution file: " + spool, e);
+        }
+    }
+}
@@ -53,6 +53,12 @@ public final class BinaryCSPReader {
       // TESTING:
       // System.out.println(csp) ;
       inFR.close();
+
+      // Symmetries are only read from a .sym file of the same name if SPEC symmetry breaking asks for them.
+      File symmetryFile = new File(fn.replaceFirst("\\.csp$", ".sym"));
+      if (fn.endsWith(".csp") && symmetryFile.exists()) {
+        csp.symmetryFilePath = symmetryFile.getPath();
+      }
       return csp;
     } catch (FileNotFoundException e) {
       System.out.println(e);
@@ -62,6 +68,44 @@ public final class BinaryCSPReader {
     return null;
   }
 
+  /**
+   * File format:
+   * <no. symmetries> (not counting the identity)
+   * Then the list of symmetries
+   * s
+   * the assignments the symmetry maps elsewhere, any others being mapped to themselves
+   * <var>, <val>, <image var>, <image val>
+   */
+  public BinaryCSPSymmetries readSymmetries(String fn, BinaryCSP csp) throws IOException {
+    BinaryCSPSymmetries symmetries = new BinaryCSPSymmetries(csp);
+    try (FileReader symmetryFR = new FileReader(fn)) {
+      StreamTokenizer symmetryIn = new StreamTokenizer(symmetryFR);
+      symmetryIn.nextToken(); // number of symmetries
+      int n = (int) symmetryIn.nval;
+      symmetryIn.nextToken(); // 's' or EOF
+      for (int i = 0; i < n; i++) {
+        if (!"s".equals(symmetryIn.sval)) {
+          throw new IOException("Expected " + n + " symmetries in " + fn);
+        }
+        List<int[]> pairs = new ArrayList<int[]>();
+        symmetryIn.nextToken(); // var of 1st pair
+        while (!"s".equals(symmetryIn.sval) && symmetryIn.ttype != StreamTokenizer.TT_EOF) {
+          int[] pair = new int[4];
+          pair[0] = (int) symmetryIn.nval;
+          for (int j = 1; j < 4; j++) {
+            symmetryIn.nextToken(); // ','
+            symmetryIn.nextToken();
+            pair[j] = (int) symmetryIn.nval;
+          }
+          pairs.add(pair);
+          symmetryIn.nextToken(); // var of next pair/s/EOF
+        }
+        symmetries.add(pairs);
+      }
+    }
+    return symmetries;
+  }
+
   /**
    *
    */
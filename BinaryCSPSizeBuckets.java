@@ -0,0 +1,80 @@
+import java.util.Random;
+
+/**
+ * Buckets of variables by the size of their domain, for selecting the variable with the smallest domain.
+ * Each bucket is a bitset of variables, so moving a variable between buckets is a couple of bit operations.
+ * Selection skips empty buckets by their counts and takes the lowest variable in the first non-empty one.
+ * This matches scanning the variables in ascending order for the first smallest domain.
+ */
+public class BinaryCSPSizeBuckets {
+    // buckets[size] holds the variables with that many values left.
+    private final long[][] buckets;
+    private final int[] counts;
+
+    /**
+     * @param noVariables The number of variables in the instance.
+     * @param maxDomainSize The size of the largest domain.
+     */
+    public BinaryCSPSizeBuckets(int noVariables, int maxDomainSize) {
+        buckets = new long[maxDomainSize + 1][(noVariables + 63) >>> 6];
+        counts = new int[maxDomainSize + 1];
+    }
+
+    /**
+     * Adds a variable to the bucket of its domain size.
+     * @param var The variable.
+     * @param size The size of its domain.
+     */
+    public void add(int var, int size) {
+        buckets[size][var >>> 6] |= 1L << var;
+        counts[size]++;
+    }
+
+    /**
+     * Removes a variable from the bucket of its domain size.
+     * @param var The variable.
+     * @param size The size of its domain.
+     */
+    public void remove(int var, int size) {
+        buckets[size][var >>> 6] &= ~(1L << var);
+        counts[size]--;
+    }
+
+    /**
+     * Moves a variable whose domain changed size to its new bucket.
+     * @param var The variable.
+     * @param oldSize The size of its domain before the change.
+     * @param newSize The size of its domain after the change.
+     */
+    public void move(int var, int oldSize, int newSize) {
+        remove(var, oldSize);
+        add(var, newSize);
+    }
+
+    /**
+     * Finds a variable with the smallest non-empty domain.
+     * @param random The random number generator to break ties with, or null to take the lowest variable.
+     * @return The variable, or -1 if every bucket of a non-empty domain is empty.
+     */
+    public int smallest(Random random) {
+        for (int size = 1; size < counts.length; size++) {
+            if (counts[size] > 0) {
+                long[] bucket = buckets[size];
+                int skip = random == null ? 0 : random.nextInt(counts[size]);
+                for (int i = 0; i < bucket.length; i++) {
+                    long word = bucket[i];
+                    int bits = Long.bitCount(word);
+                    if (skip >= bits) {
+                        skip -= bits;
+                        continue;
+                    }
+                    for (; skip > 0; skip--) {
+                        word &= word - 1;
+                    }
+                    return 64 * i + Long.numberOfTrailingZeros(word);
+                }
+            }
+        }
+        return -1;
+    }
+}
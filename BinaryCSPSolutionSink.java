@@ -0,0 +1,40 @@
+/**
+ * Receives the solutions found by a solver, in place of printing each one.
+ * A sink can be given as a lambda, which is called back with each solution as it is found.
+ * Sinks shared between solvers on different threads must be thread safe.
+ * With SPEC symmetry breaking a sink receives every symmetric copy of each solution found, but with AUTO it only
+ * receives one solution for each set of value permutations, as these can be far too many to list.
+ */
+public interface BinaryCSPSolutionSink {
+    /**
+     * Prints each solution in full, one value per line. What the solvers do by default.
+     */
+    BinaryCSPSolutionSink PRINTING = solution -> {
+        StringBuilder stringBuilder = new StringBuilder("Found solution!\n");
+        for (int val : solution) {
+            stringBuilder.append(val);
+            stringBuilder.append('\n');
+        }
+        System.out.println(stringBuilder.toString());
+        return true;
+    };
+
+    /**
+     * Ignores the solutions, leaving only the count kept by the solver. No time is spent on output.
+     */
+    BinaryCSPSolutionSink COUNTING = solution -> true;
+
+    /**
+     * Receives a solution.
+     * @param solution The value of each variable. This is a view reused by the solver, so it is only valid during
+     *        the call and must not be modified. Copy it to keep it.
+     * @return Whether search should carry on looking for more solutions.
+     */
+    boolean accept(int[] solution);
+
+    /**
+     * Finishes any output once search is over, e.g. flushing a buffer. Does nothing by default.
+     */
+    default void close() {
+    }
+}
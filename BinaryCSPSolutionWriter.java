@@ -0,0 +1,70 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A solution sink that writes every solution to a file through a buffer.
+ * CSV writes one solution per line with the values of the variables separated by commas.
+ * BINARY writes the value of each variable of each solution as a 4-byte big-endian int, with no separators.
+ * Writes are synchronized, so one writer can be shared by solvers on different threads.
+ */
+public class BinaryCSPSolutionWriter implements BinaryCSPSolutionSink {
+    enum Format {
+        CSV,
+        BINARY
+    }
+
+    private final Format format;
+    private final DataOutputStream output;
+
+    /**
+     * Opens the file to write to, replacing any file already there.
+     * @param filePath The path of the file.
+     * @param format The format to write solutions in.
+     * @throws UncheckedIOException If the file cannot be opened.
+     */
+    public BinaryCSPSolutionWriter(String filePath, Format format) throws UncheckedIOException {
+        this.format = format;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open solution file: " + filePath, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean accept(int[] solution) {
+        try {
+            if (format == Format.BINARY) {
+                for (int val : solution) {
+                    output.writeInt(val);
+                }
+            } else {
+                for (int var = 0; var < solution.length; var++) {
+                    if (var > 0) {
+                        output.write(',');
+                    }
+                    output.writeBytes(Integer.toString(solution[var]));
+                }
+                output.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write solution.", e);
+        }
+        return true;
+    }
+
+    /**
+     * Flushes the buffer and closes the file.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            output.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close solution file.", e);
+        }
+    }
+}
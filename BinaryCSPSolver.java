@@ -1,6 +1,9 @@
+import java.io.IOException;
+import java.nio.IntBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Function;
 
 public abstract class BinaryCSPSolver {
   public BinaryCSPSolver(String instanceFilePath, int solutionsToFind, int varSelectMode, int valSelectMode,
@@ -23,12 +26,68 @@ public abstract class BinaryCSPSolver {
     this.varSelectMode = varSelectMode;
     this.valSelectMode = valSelectMode;
     this.DEBUG_MODE = debugMode;
-    this.stateChanges = new Stack<BinaryCSPStateChange>();
+    this.trail = new BinaryCSPTrail();
+
+    // Every constraint starts with a weight of 1 for DOM_WDEG.
+    constraintWeights = new int[instance.constraints.size()];
+    Arrays.fill(constraintWeights, 1);
+
+    // Buckets of variables by domain size are only kept for SMALLEST_DOMAIN.
+    if (varSelectMode == VarSelectMode.SMALLEST_DOMAIN) {
+      int maxDomainSize = 0;
+      for (int var = 0; var < instance.getNoVariables(); var++) {
+        maxDomainSize = Math.max(maxDomainSize, instance.getUB(var) - instance.getLB(var) + 1);
+      }
+      sizeBuckets = new BinaryCSPSizeBuckets(instance.getNoVariables(), maxDomainSize);
+      Domain unassignedVars = instance.unassignedVars;
+      for (int var = unassignedVars.first(); var != Domain.NONE; var = unassignedVars.next(var)) {
+        sizeBuckets.add(var, instance.domains[var].size());
+      }
+    }
+
+    // Conflict counts are only kept if MIN_CONFLICTS uses them.
+    if (valSelectMode == ValSelectMode.MIN_CONFLICTS) {
+      conflictCounts = new int[instance.getNoVariables()][];
+      for (int var = 0; var < instance.getNoVariables(); var++) {
+        conflictCounts[var] = new int[instance.getUB(var) - instance.getLB(var) + 1];
+      }
+      sharesPair = new boolean[instance.constraints.size()];
+      for (BinaryConstraint constraint : instance.constraints) {
+        BinaryConstraint first = instance.getConstraint(constraint.getFirstVar(), constraint.getSecondVar());
+        if (first != constraint) {
+          sharesPair[first.getId()] = true;
+        }
+      }
+      for (int var = 0; var < instance.getNoVariables(); var++) {
+        Domain domain = instance.domains[var];
+        for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+          updateConflictCounts(var, val, 1);
+        }
+      }
+    }
+
+    // Impacts are only measured if a selection mode uses them.
+    if (varSelectMode == VarSelectMode.IMPACT || valSelectMode == ValSelectMode.IMPACT) {
+      int noVariables = instance.getNoVariables();
+      impacts = new double[noVariables][];
+      impactCounts = new int[noVariables][];
+      int maxDomainSize = 0;
+      for (int var = 0; var < noVariables; var++) {
+        int domainSize = instance.getUB(var) - instance.getLB(var) + 1;
+        impacts[var] = new double[domainSize];
+        impactCounts[var] = new int[domainSize];
+        maxDomainSize = Math.max(maxDomainSize, domainSize);
+      }
+      logSizes = new double[maxDomainSize + 1];
+      for (int size = 1; size <= maxDomainSize; size++) {
+        logSizes[size] = Math.log(size);
+      }
+    }
   }
 
   /**
    * Main method to run one of the specialised solvers.
-   * @param args file.csp [solverType] [solutionsToFind] [varSelectMode] [valSelectMode] [debugMode]
+   * @param args file.csp [solverType] [solutionsToFind] [varSelectMode] [valSelectMode] [debugMode] [key=value ...]
    */
   public static void main(String[] args) {
     try {
@@ -55,32 +114,311 @@ public abstract class BinaryCSPSolver {
           }
         }
 
-        switch (solverType) {
-          case "FC":
-            new BinaryCSPFCSolver(instanceFilePath, solutionsToFind, varSelectMode, valSelectMode, debugMode).solve();
-            break;
-          default:
-            System.out.println("Did not pass in valid solver type (FC / MAC). Defaulting to MAC.");
-          case "MAC":
-          case "":
-            new BinaryCSPMACSolver(instanceFilePath, solutionsToFind, varSelectMode, valSelectMode, debugMode).solve();
-            break;
+        if (varSelectMode < 0 || varSelectMode >= VarSelectMode.values().length) {
+          throw new IllegalArgumentException("varSelectMode must be from 0 to " + (VarSelectMode.values().length - 1)
+              + ".");
+        }
+        if (valSelectMode < 0 || valSelectMode >= ValSelectMode.values().length) {
+          throw new IllegalArgumentException("valSelectMode must be from 0 to " + (ValSelectMode.values().length - 1)
+              + ".");
+        }
+        if (!List.of("FC", "AC6", "MAC", "LOCAL", "PORTFOLIO", "").contains(solverType)) {
+          System.out.println("Did not pass in valid solver type (FC / MAC / AC6 / LOCAL / PORTFOLIO). Defaulting to MAC.");
+        }
+
+        // Any further arguments are optional settings of the form key=value.
+        // The number of threads is handled here, as parallel search creates a solver for each subproblem.
+        List<String> options = new ArrayList<String>();
+        BinaryCSPSolutionSink solutionSink = BinaryCSPSolutionSink.PRINTING;
+        int threads = 1;
+        int decompositionDepth = 0;
+        // Files to save the subproblems of EPS to instead of solving them, or to read subproblems to solve from.
+        String subproblemsSavePath = null;
+        String subproblemsLoadPath = null;
+        for (int i = 6; i < args.length; i++) {
+          if (args[i].startsWith("threads=")) {
+            threads = Integer.parseInt(args[i].substring("threads=".length()));
+          } else if (args[i].startsWith("epsDepth=")) {
+            decompositionDepth = Integer.parseInt(args[i].substring("epsDepth=".length()));
+          } else if (args[i].startsWith("epsSave=")) {
+            subproblemsSavePath = args[i].substring("epsSave=".length());
+          } else if (args[i].startsWith("epsLoad=")) {
+            subproblemsLoadPath = args[i].substring("epsLoad=".length());
+          } else if (args[i].startsWith("sink=")) {
+            solutionSink = createSolutionSink(args[i].substring("sink=".length()));
+          } else {
+            options.add(args[i]);
+          }
+        }
+
+        BinaryCSP instance = new BinaryCSPReader().readBinaryCSP(instanceFilePath);
+        if (instance == null) {
+          throw new IllegalArgumentException("Could not read the instance: " + instanceFilePath);
+        }
+        if (subproblemsSavePath != null && (decompositionDepth == 0 || subproblemsLoadPath != null)) {
+          throw new IllegalArgumentException(
+              "epsSave needs an epsDepth to decompose with, and cannot be used with epsLoad.");
+        }
+        if (subproblemsLoadPath != null && decompositionDepth > 0) {
+          throw new IllegalArgumentException("epsLoad solves the subproblems saved, so cannot be used with epsDepth.");
         }
+        boolean parallel = threads > 1 || decompositionDepth > 0 || subproblemsLoadPath != null;
+        // Local search has no search tree to split.
+        if (solverType.equals("LOCAL") && parallel) {
+          throw new IllegalArgumentException("Local search cannot be used with parallel search.");
+        }
+        // The portfolio already spreads its configurations across a thread for each processor.
+        if (solverType.equals("PORTFOLIO") && parallel) {
+          throw new IllegalArgumentException("The portfolio cannot be used with parallel search.");
+        }
+        if (solverType.equals("PORTFOLIO")) {
+          BinaryCSPPortfolio portfolio = new BinaryCSPPortfolio(instance, solutionsToFind, debugMode, options);
+          portfolio.solutionSink = solutionSink;
+          portfolio.solve();
+        } else if (parallel) {
+          String type = solverType;
+          int varMode = varSelectMode;
+          int valMode = valSelectMode;
+          boolean debug = debugMode;
+          BinaryCSPSolutionSink sink = solutionSink;
+          BinaryCSPParallelSearch parallelSearch = new BinaryCSPParallelSearch(threads, solutionsToFind, subproblem -> {
+            BinaryCSPSolver solver = createSolver(type, subproblem, 0, varMode, valMode, debug, options);
+            solver.solutionSink = sink;
+            return solver;
+          });
+          parallelSearch.setDecompositionDepth(decompositionDepth);
+          if (subproblemsSavePath != null) {
+            List<BinaryCSPSubproblem> subproblems = parallelSearch.decompose(instance);
+            BinaryCSPSubproblem.write(subproblems, subproblemsSavePath);
+            System.out.println("Saved " + subproblems.size() + " subproblems of depth " + decompositionDepth + " to "
+                + subproblemsSavePath + "!");
+          } else if (subproblemsLoadPath != null) {
+            parallelSearch.solve(instance, BinaryCSPSubproblem.read(subproblemsLoadPath));
+          } else {
+            parallelSearch.solve(instance);
+          }
+        } else {
+          BinaryCSPSolver solver = createSolver(solverType, instance, solutionsToFind, varSelectMode, valSelectMode,
+              debugMode, options);
+          solver.solutionSink = solutionSink;
+          solver.solve();
+        }
+        // The solutions kept by FIRST are printed once search is over, so printing does not slow search down.
+        if (solutionSink instanceof BinaryCSPFirstSolutions) {
+          for (int[] solution : ((BinaryCSPFirstSolutions) solutionSink).getSolutions()) {
+            BinaryCSPSolutionSink.PRINTING.accept(solution);
+          }
+        }
+        solutionSink.close();
       }
-    } catch (Exception e) {
+    } catch (IllegalArgumentException e) {
+      // Bad arguments and options that cannot be used together say what is wrong. Other errors are left to propagate.
+      System.out.println(e.getMessage());
       System.out.println(
-          "Usage: java BinaryCSPSolver <file.csp> [solverType] [solutionsToFind] [varSelectMode] [valSelectMode] [debugMode]");
+          "Usage: java BinaryCSPSolver <file.csp> [solverType] [solutionsToFind] [varSelectMode] [valSelectMode] [debugMode] [key=value ...]");
+    }
+  }
+
+  /**
+   * Creates one of the specialised solvers for an instance.
+   * @param solverType The solver type (MAC / FC / AC6 / LOCAL). Anything else creates a MAC solver.
+   * @param instance The instance to solve.
+   * @param solutionsToFind The number of solutions to find. 0 = All solutions.
+   * @param varSelectMode The index of the variable selection mode.
+   * @param valSelectMode The index of the value selection mode.
+   * @param debugMode Whether to print out solver logic.
+   * @param options Optional settings of the form key=value to apply.
+   * @return The solver.
+   * @throws IllegalArgumentException If an option is not recognised.
+   */
+  static BinaryCSPSolver createSolver(String solverType, BinaryCSP instance, int solutionsToFind, int varSelectMode,
+      int valSelectMode, boolean debugMode, List<String> options) throws IllegalArgumentException {
+    BinaryCSPSolver solver;
+    switch (solverType) {
+      case "FC":
+        solver = new BinaryCSPFCSolver(instance, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        break;
+      case "AC6":
+        solver = new BinaryCSPAC6Solver(instance, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        break;
+      case "LOCAL":
+        solver = new BinaryCSPLocalSearchSolver(instance, solutionsToFind, debugMode);
+        break;
+      default:
+        solver = new BinaryCSPMACSolver(instance, solutionsToFind, varSelectMode, valSelectMode, debugMode);
+        break;
+    }
+    for (String option : options) {
+      solver.setOption(option);
+      solver.options.add(option);
+    }
+    // Components are solved by solvers set up the same way, which may split them further.
+    BinaryCSPSolver parent = solver;
+    solver.componentSolverFactory = component -> createSolver(solverType, component, 0, varSelectMode, valSelectMode,
+        debugMode, parent.options);
+    return solver;
+  }
+
+  /**
+   * Creates the solution sink named on the command line.
+   * @param sink PRINT, COUNT, FIRST:k, CSV:path or BINARY:path.
+   * @return The solution sink.
+   * @throws IllegalArgumentException If the sink is not recognised.
+   */
+  static BinaryCSPSolutionSink createSolutionSink(String sink) throws IllegalArgumentException {
+    String[] typePath = sink.split(":", 2);
+    switch (typePath[0]) {
+      case "PRINT":
+        return BinaryCSPSolutionSink.PRINTING;
+      case "COUNT":
+        return BinaryCSPSolutionSink.COUNTING;
+      case "FIRST":
+        if (typePath.length != 2) {
+          throw new IllegalArgumentException("The first solutions sink must be of the form FIRST:k");
+        }
+        return new BinaryCSPFirstSolutions(Integer.parseInt(typePath[1]));
+      case "CSV":
+      case "BINARY":
+        if (typePath.length != 2) {
+          throw new IllegalArgumentException("File sinks must be of the form " + typePath[0] + ":path");
+        }
+        return new BinaryCSPSolutionWriter(typePath[1], BinaryCSPSolutionWriter.Format.valueOf(typePath[0]));
+      default:
+        throw new IllegalArgumentException("Unknown solution sink: " + sink);
+    }
+  }
+
+  /**
+   * Applies an optional setting given on the command line.
+   * @param option The setting in the form key=value, e.g. propagation=AC3RM.
+   * @throws IllegalArgumentException If the key or value is not recognised.
+   */
+  protected void setOption(String option) throws IllegalArgumentException {
+    String[] keyValue = option.split("=", 2);
+    if (keyValue.length != 2) {
+      throw new IllegalArgumentException("Options must be of the form key=value: " + option);
+    }
+    switch (keyValue[0]) {
+      case "propagation":
+        setPropagationMode(PropagationMode.valueOf(keyValue[1]));
+        break;
+      case "restarts":
+        restartMode = RestartMode.valueOf(keyValue[1]);
+        if (restartMode != RestartMode.NONE && random == null) {
+          random = new Random(0);
+        }
+        break;
+      case "restartBase":
+        restartBase = Integer.parseInt(keyValue[1]);
+        break;
+      case "restartFactor":
+        restartFactor = Double.parseDouble(keyValue[1]);
+        break;
+      case "seed":
+        random = new Random(Long.parseLong(keyValue[1]));
+        break;
+      case "symmetry":
+        setSymmetryMode(SymmetryMode.valueOf(keyValue[1]));
+        break;
+      case "components":
+        decomposeComponents = Boolean.parseBoolean(keyValue[1]);
+        break;
+      case "timeLimit":
+        timeLimit = Long.parseLong(keyValue[1]);
+        break;
+      case "nodeLimit":
+        nodeLimit = Long.parseLong(keyValue[1]);
+        break;
+      case "revisionLimit":
+        revisionLimit = Long.parseLong(keyValue[1]);
+        break;
+      case "search":
+        searchMode = SearchMode.valueOf(keyValue[1]);
+        break;
+      case "maxDiscrepancies":
+        maxDiscrepancies = Integer.parseInt(keyValue[1]);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown option: " + keyValue[0]);
     }
   }
 
   enum VarSelectMode {
     ASCENDING,
-    SMALLEST_DOMAIN
+    SMALLEST_DOMAIN,
+    DOM_WDEG,
+    IMPACT
   }
 
   enum ValSelectMode {
     ASCENDING,
-    MIN_CONFLICTS
+    MIN_CONFLICTS,
+    IMPACT
+  }
+
+  /**
+   * How revise looks for a support for each value.
+   * AC3 scans the other domain from the start every time.
+   * AC3RM first checks the residue, the last support found for the value on that arc, then scans from the start.
+   * AC2001 also checks the residue first, then resumes the scan after it.
+   * AC3BIT intersects the compiled support row of the value with the other domain a 64-bit word at a time.
+   */
+  enum PropagationMode {
+    AC3,
+    AC3RM,
+    AC2001,
+    AC3BIT
+  }
+
+  /**
+   * When to restart search, counted in failures (domain wipeouts).
+   * LUBY restarts after restartBase times each term of the Luby sequence 1, 1, 2, 1, 1, 2, 4, ...
+   * GEOMETRIC restarts after restartBase failures, then multiplies the limit by restartFactor each time.
+   */
+  enum RestartMode {
+    NONE,
+    LUBY,
+    GEOMETRIC
+  }
+
+  /**
+   * How symmetries are broken.
+   * SPEC adds lex-leader constraints for the symmetries in the .sym file next to the instance, read when SPEC is set.
+   * AUTO checks whether every value is interchangeable, as in graph colouring or a blank Sudoku. If so, a left branch
+   * var = val using a value no earlier decision uses stands for every such value, so its right branch removes them all.
+   */
+  enum SymmetryMode {
+    NONE,
+    SPEC,
+    AUTO
+  }
+
+  /**
+   * The order the search tree is explored in.
+   * DFS explores it depth first, taking each right branch var != val once the left branch var = val is explored.
+   * LDS (limited discrepancy search) explores it in iterations, where iteration k only follows paths taking at most k
+   * right branches (discrepancies from the heuristics). Solutions needing few discrepancies are found first, without
+   * getting stuck deep in a bad left branch.
+   */
+  enum SearchMode {
+    DFS,
+    LDS
+  }
+
+  /**
+   * Why search stopped, recorded along with the statistics of the search done.
+   * SOLVED means the solutions asked for were found or the sink asked to stop.
+   * EXHAUSTED means the whole search space was explored, so every solution was found, or none exist if none were.
+   * TIMEOUT and LIMIT_REACHED mean search ran out of time or reached its node or revision limit first.
+   * CANCELLED means search was cancelled. RUNNING means search has not stopped yet.
+   */
+  enum Status {
+    RUNNING,
+    SOLVED,
+    EXHAUSTED,
+    TIMEOUT,
+    LIMIT_REACHED,
+    CANCELLED
   }
 
   // The instance to solve.
@@ -93,27 +431,156 @@ public abstract class BinaryCSPSolver {
   VarSelectMode varSelectMode;
   ValSelectMode valSelectMode;
 
+  // Setting for how revise should look for supports.
+  PropagationMode propagationMode = PropagationMode.AC3;
+
+  // The weight of each constraint, indexed by constraint id. Increased each time the constraint causes a wipeout.
+  int[] constraintWeights;
+
+  // The average impact of each assignment tried so far, indexed by variable and then by value offset by its lower bound.
+  // The impact is the fraction of the search space removed by assigning the value and propagating, from 0 to 1.
+  // Only used by the impact selection modes, along with the number of times each impact was measured.
+  double[][] impacts;
+  int[][] impactCounts;
+
+  // The number of values in the domains of its neighbours that each value conflicts with, for MIN_CONFLICTS.
+  // Indexed by variable and then by value offset by its lower bound. Kept up to date as values are pruned and restored.
+  int[][] conflictCounts;
+
+  // Whether each constraint has others on the same pair of variables, indexed by constraint id.
+  boolean[] sharesPair;
+
+  // The natural log of each domain size, so the search space can be summed rather than multiplied.
+  double[] logSizes;
+
+  // The variables left to assign by domain size, for SMALLEST_DOMAIN.
+  BinaryCSPSizeBuckets sizeBuckets;
+
+  // Settings for restarting search.
+  RestartMode restartMode = RestartMode.NONE;
+  int restartBase = 100;
+  double restartFactor = 1.5;
+
+  // How symmetries are broken.
+  SymmetryMode symmetryMode = SymmetryMode.NONE;
+
+  // The number of decisions var = val on the search path using each value, offset by the lower bound, for AUTO.
+  int[] valueUses;
+
+  // Whether to solve the components of the constraint graph between the variables left to assign independently.
+  boolean decomposeComponents = false;
+
+  // Creates a solver for a copy of the instance holding one component, set up the same way as this solver.
+  Function<BinaryCSP, BinaryCSPSolver> componentSolverFactory;
+
+  // The options applied to the solver, so that solvers for components can be given the same ones.
+  final List<String> options = new ArrayList<String>();
+
+  // The solver of the component being solved, so that cancelling reaches it. Null if none is being solved.
+  private volatile BinaryCSPSolver componentSolver;
+
+  // The order the search tree is explored in.
+  SearchMode searchMode = SearchMode.DFS;
+
+  // The most discrepancies LDS allows before stopping, and the number allowed in the current iteration.
+  int maxDiscrepancies = Integer.MAX_VALUE;
+  int discrepancyLimit = 0;
+
+  // The number of right branches on the search path, counted as the levels of the trail that assign no variable.
+  int discrepancies = 0;
+
+  // Whether the current LDS iteration skipped a right branch, so another iteration has more to explore.
+  private boolean rightBranchSkipped = false;
+
+  // The solutions shown by earlier LDS iterations, kept only if the search tree can change between iterations.
+  // Otherwise each iteration only shows the solutions reached with exactly as many discrepancies as it allows.
+  private Set<IntBuffer> ldsSolutions;
+
+  // Limits on search, which stops early once one is reached. 0 = No limit.
+  long timeLimit = 0l; // In milliseconds from when the solver starts, including preparing it.
+  long nodeLimit = 0l;
+  long revisionLimit = 0l;
+
+  // The System.nanoTime() that search must stop by, or 0 for none. Set when the solver starts if not set before.
+  long deadline = 0l;
+
+  // The clock is only read once every this many steps, as steps are usually far shorter than any time limit.
+  private static final int CLOCK_INTERVAL = 64;
+  private int stepsSinceClock = 0;
+
+  // Random number generator to break ties when selecting variables and values. Ties go to the first found if null.
+  Random random;
+
+  // The decision made at each level of the trail, used to record nogoods when restarting.
+  // Positive decisions assign var = val (left branch) and negative ones remove val from var (right branch).
+  int[] decisionVars = new int[64];
+  int[] decisionVals = new int[64];
+  boolean[] decisionPositive = new boolean[64];
+  // Whether the left branch at each level assigned a value that no earlier decision used, for AUTO symmetry breaking.
+  boolean[] decisionNewValue = new boolean[64];
+  // Whether the variables left to assign at each depth of the trail are known to form one component, so that
+  // descend() only looks for components when an assignment could have split them.
+  boolean[] componentsConnected = new boolean[65];
+
+  // Restart state.
+  int failuresSinceRestart = 0;
+  int restartLimit;
+
+  // Nogoods recorded from the search paths abandoned by restarts.
+  BinaryCSPNogoodStore nogoods;
+
+  // The task this solver searches in parallel search, which may split off right branches. Null if searching alone.
+  BinaryCSPParallelSearch.SubproblemTask subproblem;
+
+  // The last support found for each value on each arc, indexed by arc id and then by value offset by its lower bound.
+  // Only used by the residual propagation modes.
+  int[][] residues;
+
   // Variables to log solver data.
-  int solutionsFound = 0; // The number of solutions found.
+  long solutionsFound = 0l; // The number of solutions found.
+  long symmetricSolutionsFound = 0l; // The number of solutions found, counting every symmetric copy of each.
   int nodesExplored = 0; // The number of nodes explored.
   int revisionsDone = 0; // The number of arc revisions done.
+  int restartsDone = 0; // The number of times search was restarted.
+  int componentSplits = 0; // The number of times the variables left to assign split into independent components.
   long timeTaken = 0l; // The time taken to finish.
 
+  // The state of the search. Search goes down the tree while descending and backtracks otherwise.
+  private boolean started = false;
+  private boolean ready = true;
+  boolean descending = true;
+  boolean finished = false;
+  volatile Status status = Status.RUNNING;
+  private volatile boolean paused = false;
+  private volatile boolean cancelled = false;
+
+  // Whether to skip printing solver information. Used when racing other solvers, where only the winner's is wanted.
+  boolean quiet = false;
+
+  // Where solutions go once found. Prints them by default.
+  BinaryCSPSolutionSink solutionSink = BinaryCSPSolutionSink.PRINTING;
+
+  // The view of the current solution given to the sink, reused for every solution.
+  private int[] solution;
+
   // Flag to print out solver logic.
   final boolean DEBUG_MODE;
 
-  // A states stack for each depth of search.
-  // Each state has a list of variable domains.
-  // Each domain is a set of integers.
-  Stack<BinaryCSPStateChange> stateChanges;
+  // A trail of the changes made at each depth of search so that they can be undone when backtracking.
+  BinaryCSPTrail trail;
+
+  // Results of revising an arc.
+  static final int UNCHANGED = 0; // No values were removed.
+  static final int CHANGED = 1; // Values were removed, leaving the domain non-empty.
+  static final int WIPEOUT = 2; // Every value was removed.
 
   /**
    * Algorithm to enforce local arc consistency.
    * @param var The var to enforce local arc consistency around.
    * @param changed Whether the preceding assignment / unassignment changed var's domain.
-   * @throws EmptyDomainException If the domain of any variables were wiped out during revision.
+   * @return Whether no domains were wiped out during revision.
    */
-  abstract void enforceLocalConsistency(int var, boolean changed) throws EmptyDomainException;
+  abstract boolean enforceLocalConsistency(int var, boolean changed);
 
   /**
    * Method for solver types that require special setup at the start.
@@ -128,95 +595,655 @@ public abstract class BinaryCSPSolver {
    * Also records solver information and prints it at the end.
    */
   protected void solve() {
-    // Create a starting state.
-    enterNewState(-1);
-    Instant start = Instant.now();
-
-    boolean ready = prepareSolver();
-
-    if (ready) {
-      recursiveStep(); // Start the first recursive step of solving.
+    resume();
+  }
 
+  /**
+   * Runs search until it finishes or a pause is requested, setting up the solver first if this is the first run.
+   * Prints solver information once search finishes.
+   */
+  public void resume() {
+    if (!start() || finished) {
+      return;
+    }
+    Instant start = Instant.now();
+    while (!finished && !limitReached()) {
+      if (paused) {
+        // This call is the one the pause stops, so the next one carries on.
+        paused = false;
+        break;
+      }
+      searchStep();
+    }
+    timeTaken += Duration.between(start, Instant.now()).toMillis();
+    if (finished && !quiet) {
       // Print solver information after finishing.
-      Instant finish = Instant.now();
-      timeTaken = Duration.between(start, finish).toMillis();
       printInfo();
       System.out.println("Time taken: " + timeTaken + "ms");
+    }
+  }
+
+  /**
+   * Asks search to stop after the step it is on. Can be called from another thread. Search carries on with resume.
+   * A pause asked for while search is not running stops the next call to resume before its first step.
+   */
+  public void pause() {
+    paused = true;
+  }
+
+  /**
+   * Asks search to stop for good after the step it is on. Can be called from another thread, even before search starts.
+   * The status becomes CANCELLED and the statistics of the search done so far are kept.
+   */
+  public void cancel() {
+    cancelled = true;
+    BinaryCSPSolver solver = componentSolver;
+    if (solver != null) {
+      solver.cancel();
+    }
+  }
+
+  /**
+   * @return Whether search was cancelled.
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Does a single step of search, setting up the solver first if this is the first step.
+   * Time spent stepping is not counted in the time taken.
+   * @return Whether search has not finished yet.
+   */
+  public boolean step() {
+    if (!start()) {
+      return false;
+    }
+    if (!finished && !limitReached()) {
+      searchStep();
+    }
+    return !finished;
+  }
+
+  /**
+   * @return Whether search has stopped for good. The status says why.
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * @return Why search stopped, or RUNNING if it has not.
+   */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Stops search for good.
+   * @param status Why search stopped.
+   */
+  void finish(Status status) {
+    finished = true;
+    this.status = status;
+  }
+
+  /**
+   * Checks whether search has been cancelled or has reached one of its limits, finishing it if so.
+   * Called before every step. Only counters are compared on most steps, and the clock is read every CLOCK_INTERVAL.
+   * @return Whether search must stop.
+   */
+  private boolean limitReached() {
+    if (cancelled) {
+      finish(Status.CANCELLED);
+    } else if ((nodeLimit > 0 && nodesExplored >= nodeLimit) || (revisionLimit > 0 && revisionsDone >= revisionLimit)) {
+      finish(Status.LIMIT_REACHED);
+    } else if (deadline != 0 && ++stepsSinceClock >= CLOCK_INTERVAL) {
+      stepsSinceClock = 0;
+      if (System.nanoTime() - deadline >= 0) {
+        finish(Status.TIMEOUT);
+      }
+    }
+    return finished;
+  }
+
+  /**
+   * Prepares the solver the first time it is called.
+   * @return Whether the solver prepared successfully.
+   */
+  boolean start() {
+    if (!started) {
+      started = true;
+      if (symmetryMode == SymmetryMode.AUTO && restartMode != RestartMode.NONE) {
+        throw new IllegalArgumentException("Restarts cannot be used with AUTO symmetry breaking.");
+      }
+      // Nogoods and lex-leader constraints tie variables together across components.
+      if (decomposeComponents && (restartMode != RestartMode.NONE || symmetryMode != SymmetryMode.NONE)) {
+        throw new IllegalArgumentException("Component decomposition cannot be used with restarts or symmetry breaking.");
+      }
+      if (searchMode == SearchMode.LDS && (restartMode != RestartMode.NONE || decomposeComponents)) {
+        throw new IllegalArgumentException("LDS cannot be used with restarts or component decomposition.");
+      }
+      // Learned orderings and random tie-breaking can change the search tree between LDS iterations.
+      if (searchMode == SearchMode.LDS && (varSelectMode == VarSelectMode.DOM_WDEG
+          || varSelectMode == VarSelectMode.IMPACT || valSelectMode == ValSelectMode.IMPACT || random != null)) {
+        ldsSolutions = new HashSet<IntBuffer>();
+      }
+      if (decomposeComponents && componentSolverFactory == null) {
+        throw new IllegalArgumentException("Component decomposition needs a solver made by createSolver.");
+      }
+      if (timeLimit > 0 && deadline == 0) {
+        deadline = System.nanoTime() + timeLimit * 1_000_000l;
+      }
+      Instant start = Instant.now();
+      if (prepareSolver()) {
+        restartLimit = restartBase;
+      } else {
+        System.err.println("Failed to prepare solver!");
+        ready = false;
+        // Preparing found a wipeout, so there are no solutions.
+        status = Status.EXHAUSTED;
+      }
+      timeTaken += Duration.between(start, Instant.now()).toMillis();
+    }
+    return ready;
+  }
+
+  /**
+   * Does one step of search, setting finished once there is no more search to do.
+   * Search goes down the tree making guesses until all variables are assigned or a domain is wiped out.
+   * It then backtracks to the deepest guess var = val whose left branch has been explored and guesses var != val.
+   * The decisions on the trail act as the stack of the search, so no recursion is needed.
+   */
+  protected void searchStep() {
+    if (descending) {
+      descend();
     } else {
-      System.err.println("Failed to prepare solver!");
+      backtrack();
     }
   }
 
   /**
-   * Solves the CSP through recursive steps.
-   * @return Whether to stop searching. Used to propagate exit condition in case of finding limited solutions.
+   * LEFT BRANCH: Records a solution if every variable is assigned, otherwise makes a guess var = val.
    */
-  private boolean recursiveStep() {
+  private void descend() {
     if (completeAssignments()) {
-      showSolution(); // After finding a solution, continue searching for further solutions.
-      return solutionsToFind > 0 && solutionsFound >= solutionsToFind;
+      // After finding a solution, continue searching for further solutions unless the sink asks to stop.
+      boolean carryOn = true;
+      if ((searchMode == SearchMode.DFS || isNewToLds()) && (subproblem == null || subproblem.claimSolution())) {
+        carryOn = showSolution();
+      }
+      if (!carryOn || (solutionsToFind > 0 && solutionsFound >= solutionsToFind)) {
+        finish(Status.SOLVED);
+      }
+      descending = false;
+      return;
+    }
+
+    // Once the variables left fall apart into independent components, solve each one on its own instead.
+    if (decomposeComponents && !componentsConnected[trail.getDepth()]) {
+      if (instance.isConnected()) {
+        componentsConnected[trail.getDepth()] = true;
+      } else {
+        solveComponents(instance.components());
+        descending = false;
+        return;
+      }
     }
 
-    // LEFT BRANCH: Make a guess.
     // Select a variable and value to assign.
     int var = selectVar();
     int val = selectVal(var);
 
+    // Whether var = val stands for every value no earlier decision uses, for AUTO symmetry breaking.
+    boolean newValue = valueUses != null && valueUses[val - instance.getLB(var)] == 0;
+
+    // In parallel search the right branch var != val may be handed to another thread.
+    boolean rightBranchSplit = subproblem != null && subproblem.split(this, var, val);
+
+    // Measure the search space before the assignment if learning impacts.
+    double logSpaceBefore = impacts != null ? logSearchSpace() : 0;
+
     // Assign the variable, removing all other values from its domain.
     boolean changed = assign(var, val);
+    decisionNewValue[trail.getDepth() - 1] = newValue;
+    if (rightBranchSplit) {
+      fixDecision();
+    }
 
-    try {
-      // If any values were removed, propagate the changes.
-      enforceLocalConsistency(var, changed);
+    // If any values were removed, propagate the changes.
+    boolean consistent = enforceLocalConsistency(var, changed) && (nogoods == null || nogoods.propagate(var, val))
+        && isLexLeader();
+    if (impacts != null) {
+      // A wipeout removes the whole search space.
+      updateImpact(var, val, consistent ? 1 - Math.exp(logSearchSpace() - logSpaceBefore) : 1);
+    }
+
+    // If no domains were wiped out by the changes, carry on down to choose further variables.
+    if (!consistent) {
+      failed(1);
+    }
+  }
 
-      // If no domains were wiped out by the changes, run the algorithm again to choose further variables.
-      boolean stopSearch = recursiveStep();
-      if (stopSearch) {
-        return true;
+  /**
+   * RIGHT BRANCH: Undoes explored right branches, then guesses the opposite of the deepest explored left branch.
+   * Search is finished once there are no left branches left to undo.
+   */
+  private void backtrack() {
+    // Undo the right branches that have been explored, putting val back into the domain of var.
+    while (trail.getDepth() > 0 && !decisionPositive[trail.getDepth() - 1]) {
+      revertState();
+    }
+    if (trail.getDepth() == 0) {
+      if (!rightBranchSkipped) {
+        finish(Status.EXHAUSTED);
+      } else if (discrepancyLimit >= maxDiscrepancies) {
+        finish(Status.LIMIT_REACHED);
+      } else {
+        // Start the next LDS iteration from the top, allowing one more discrepancy.
+        discrepancyLimit++;
+        rightBranchSkipped = false;
+        descending = true;
       }
-    } catch (EmptyDomainException e) {
-      // Exception to let AC3 cancel early in the case of a domain wipeout.
-      if (DEBUG_MODE) {
-        System.out.println(e.toString() + " (1)");
+      return;
+    }
+
+    // LDS only takes a right branch if the path has a discrepancy to spare, and otherwise leaves it for later.
+    if (searchMode == SearchMode.LDS && discrepancies >= discrepancyLimit) {
+      rightBranchSkipped = true;
+      fixDecision();
+      return;
+    }
+
+    int level = trail.getDepth() - 1;
+    int var = decisionVars[level];
+    int val = decisionVals[level];
+    boolean newValue = decisionNewValue[level];
+    if (!unassign(var, val)) {
+      failed(2);
+      return;
+    }
+
+    // Restarting here leaves the whole left branch explored, so it can be recorded as a nogood.
+    if (restartMode != RestartMode.NONE && failuresSinceRestart >= restartLimit) {
+      descending = restart();
+      if (!descending) {
+        finish(Status.EXHAUSTED);
       }
+      return;
     }
 
-    // RIGHT BRANCH: If the guess failed, guess the opposite.
-    try {
-      unassign(var, val);
-      enforceLocalConsistency(var, true); // Unassign will always change the variable's domain if not wiping it out.
-      boolean stopSearch = recursiveStep();
-      if (stopSearch) {
-        return true;
-      }
-    } catch (EmptyDomainException e) {
-      // Exception to let AC3 cancel early in the case of a domain wipeout.
-      if (DEBUG_MODE) {
-        System.out.println(e.toString() + " (2)");
+    // Unassign will always change the variable's domain if not wiping it out.
+    descending = (!newValue || pruneUnusedValues(var)) && enforceLocalConsistency(var, true) && isLexLeader();
+    if (!descending) {
+      failed(2);
+    }
+  }
+
+  /**
+   * Solves each component of the variables left to assign on its own, as if it were the whole instance.
+   * The solutions below the current node are every combination of a solution of each component, so their number is
+   * the product of the numbers of solutions of the components. A component of one variable has a solution for each
+   * value left in its domain. Combined solutions are only put together if the sink or a solution limit needs them.
+   * @param components The variables of each component.
+   */
+  private void solveComponents(List<int[]> components) {
+    componentSplits++;
+    boolean combine = solutionsToFind > 0 || solutionSink != BinaryCSPSolutionSink.COUNTING;
+    // Every combination is a different solution, so no component needs more solutions than are left to find.
+    int solutionsNeeded = solutionsToFind > 0 ? (int) (solutionsToFind - solutionsFound) : 0;
+    List<List<int[]>> componentSolutions = new ArrayList<List<int[]>>();
+    long combinations = 1;
+    for (int[] component : components) {
+      List<int[]> solutions = new ArrayList<int[]>();
+      long count;
+      if (component.length == 1) {
+        Domain domain = instance.domains[component[0]];
+        count = domain.size();
+        for (int val = domain.first(); combine && val != Domain.NONE; val = domain.next(val)) {
+          solutions.add(new int[] { val });
+        }
+      } else {
+        BinaryCSPSolver solver = componentSolverFactory.apply(instance.copy(component));
+        solver.solutionsToFind = solutionsNeeded;
+        solver.quiet = true;
+        // The component is part of this search, so it shares its limits.
+        solver.deadline = deadline;
+        solver.nodeLimit = nodeLimit > 0 ? Math.max(1, nodeLimit - nodesExplored) : 0;
+        solver.revisionLimit = revisionLimit > 0 ? Math.max(1, revisionLimit - revisionsDone) : 0;
+        // Only the values of the component's variables are kept from each of its solutions.
+        solver.solutionSink = !combine ? BinaryCSPSolutionSink.COUNTING : componentSolution -> {
+          int[] values = new int[component.length];
+          for (int i = 0; i < component.length; i++) {
+            values[i] = componentSolution[component[i]];
+          }
+          solutions.add(values);
+          return true;
+        };
+        componentSolver = solver;
+        if (cancelled) {
+          solver.cancel();
+        }
+        solver.resume();
+        componentSolver = null;
+        count = solver.solutionsFound;
+        nodesExplored += solver.nodesExplored;
+        revisionsDone += solver.revisionsDone;
+        componentSplits += solver.componentSplits;
+        if (solver.status != Status.SOLVED && solver.status != Status.EXHAUSTED) {
+          // The component stopped early, so its solutions cannot be counted.
+          finish(solver.status);
+          return;
+        }
+      }
+      if (count == 0) {
+        // A component without solutions leaves none for the others to combine with.
+        return;
+      }
+      combinations *= count;
+      componentSolutions.add(solutions);
+    }
+
+    if (!combine) {
+      solutionsFound += combinations;
+      return;
+    }
+
+    // Go through the combinations like an odometer, with the last component changing fastest.
+    if (solution == null) {
+      solution = new int[instance.domains.length];
+    }
+    for (int var = 0; var < solution.length; var++) {
+      solution[var] = instance.domains[var].first();
+    }
+    int[] indices = new int[components.size()];
+    while (true) {
+      for (int i = 0; i < indices.length; i++) {
+        int[] component = components.get(i);
+        int[] values = componentSolutions.get(i).get(indices[i]);
+        for (int j = 0; j < component.length; j++) {
+          solution[component[j]] = values[j];
+        }
+      }
+      if (subproblem != null && !subproblem.claimSolution()) {
+        return;
+      }
+      if (!acceptSolution(solution) || (solutionsToFind > 0 && solutionsFound >= solutionsToFind)) {
+        finish(Status.SOLVED);
+        return;
+      }
+      int i = indices.length - 1;
+      while (i >= 0 && ++indices[i] == componentSolutions.get(i).size()) {
+        indices[i--] = 0;
+      }
+      if (i < 0) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Checks whether the solution at the current leaf was not shown by an earlier LDS iteration.
+   * If the search tree is the same in every iteration, the leaves reached with fewer discrepancies than allowed were
+   * reached before. Otherwise the solutions shown so far are looked up.
+   * @return Whether the solution is new.
+   */
+  private boolean isNewToLds() {
+    if (ldsSolutions == null) {
+      return discrepancies == discrepancyLimit;
+    }
+    int[] values = new int[instance.getNoVariables()];
+    for (int var = 0; var < values.length; var++) {
+      values[var] = instance.domains[var].first();
+    }
+    // Int buffers compare by their contents, unlike arrays.
+    return ldsSolutions.add(IntBuffer.wrap(values));
+  }
+
+  /**
+   * Checks the lex-leader constraints of SPEC symmetry breaking against the current domains.
+   * @return Whether the domains can still lead to a solution that is no greater than its symmetric copies.
+   */
+  private boolean isLexLeader() {
+    return symmetryMode != SymmetryMode.SPEC || instance.symmetries.isLexLeader(instance.domains);
+  }
+
+  /**
+   * Removes every value that no decision on the search path uses from the domain of a variable, for AUTO.
+   * Done on the right branch of a left branch that used such a value, as all of them were interchangeable with it.
+   * @param var The variable.
+   * @return Whether the domain still has values left.
+   */
+  private boolean pruneUnusedValues(int var) {
+    Domain domain = instance.domains[var];
+    int lb = instance.getLB(var);
+    for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+      if (valueUses[val - lb] == 0 && !pruneDomain(var, val)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Sets how symmetries are broken.
+   * @param symmetryMode The symmetry mode to use. AUTO falls back to NONE if the values are not interchangeable.
+   * @throws IllegalArgumentException If SPEC is used for an instance without a .sym file, or it cannot be read.
+   */
+  public void setSymmetryMode(SymmetryMode symmetryMode) throws IllegalArgumentException {
+    if (symmetryMode == SymmetryMode.SPEC && instance.symmetries == null) {
+      if (instance.symmetryFilePath == null) {
+        throw new IllegalArgumentException("No .sym file was found next to the instance.");
+      }
+      try {
+        instance.symmetries = new BinaryCSPReader().readSymmetries(instance.symmetryFilePath, instance);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Could not read the .sym file: " + e.getMessage(), e);
+      }
+    }
+    if (symmetryMode == SymmetryMode.AUTO && !valuesInterchangeable()) {
+      System.out.println("Values are not interchangeable. Searching without symmetry breaking.");
+      symmetryMode = SymmetryMode.NONE;
+    }
+    this.symmetryMode = symmetryMode;
+    valueUses = symmetryMode == SymmetryMode.AUTO ? new int[instance.getUB(0) - instance.getLB(0) + 1] : null;
+  }
+
+  /**
+   * Checks whether every permutation of the values maps solutions to solutions.
+   * This holds when every variable has the same starting domain and each constraint only depends on whether its two
+   * values are equal, e.g. all different constraints.
+   * @return Whether the values are interchangeable.
+   */
+  private boolean valuesInterchangeable() {
+    int lb = instance.getLB(0);
+    int ub = instance.getUB(0);
+    for (int var = 1; var < instance.getNoVariables(); var++) {
+      if (instance.getLB(var) != lb || instance.getUB(var) != ub) {
+        return false;
+      }
+    }
+    for (BinaryConstraint constraint : instance.constraints) {
+      int var = constraint.getFirstVar();
+      boolean equalSupported = constraint.isSupported(var, lb, lb);
+      boolean differentSupported = lb < ub && constraint.isSupported(var, lb, lb + 1);
+      for (int val = lb; val <= ub; val++) {
+        for (int otherVal = lb; otherVal <= ub; otherVal++) {
+          if (constraint.isSupported(var, val, otherVal) != (val == otherVal ? equalSupported : differentSupported)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Works out how many solutions a solution found stands for once symmetric copies are counted, without listing them.
+   * With AUTO this is the number of ways to permute the values, d! / (d - k)! for d values of which k are used.
+   * @param solution The value of each variable.
+   * @return The number of solutions.
+   */
+  private long countSymmetricSolutions(int[] solution) {
+    switch (symmetryMode) {
+      case AUTO:
+        int lb = instance.getLB(0);
+        boolean[] used = new boolean[valueUses.length];
+        for (int val : solution) {
+          used[val - lb] = true;
+        }
+        long count = 1;
+        int free = valueUses.length;
+        for (boolean valUsed : used) {
+          if (valUsed) {
+            count *= free--;
+          }
+        }
+        return count;
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * Records a domain wipeout, after which search backtracks.
+   * @param branch The branch the wipeout happened on, 1 for left and 2 for right.
+   */
+  private void failed(int branch) {
+    descending = false;
+    failuresSinceRestart++;
+    if (DEBUG_MODE) {
+      System.out.println("Domain wipeout! (" + branch + ")");
+    }
+  }
+
+  /**
+   * Restarts search from the starting state, keeping what was learned by the search so far.
+   * The explored part of the abandoned search path is recorded as nld-nogoods.
+   * For each right branch var != val on the path, the left branches above it plus var = val were fully explored.
+   * Nogoods of a single assignment are pruned from the starting state for good.
+   * @return Whether there is any search left to do, i.e. the nogoods did not wipe out a domain.
+   */
+  private boolean restart() {
+    restartsDone++;
+    failuresSinceRestart = 0;
+    if (restartMode == RestartMode.LUBY) {
+      restartLimit = restartBase * luby(restartsDone + 1);
+    } else {
+      restartLimit = (int) Math.min(Integer.MAX_VALUE, restartLimit * restartFactor);
+    }
+
+    // Extract the nogoods before undoing the path.
+    int depth = trail.getDepth();
+    List<int[]> newNogoods = new ArrayList<int[]>();
+    int[] positive = new int[2 * depth];
+    int positiveLength = 0;
+    for (int level = 0; level < depth; level++) {
+      if (decisionPositive[level]) {
+        positive[positiveLength++] = decisionVars[level];
+        positive[positiveLength++] = decisionVals[level];
+      } else {
+        int[] nogood = Arrays.copyOf(positive, positiveLength + 2);
+        nogood[positiveLength] = decisionVars[level];
+        nogood[positiveLength + 1] = decisionVals[level];
+        newNogoods.add(nogood);
+      }
+    }
+    while (trail.getDepth() > 0) {
+      revertState();
+    }
+    if (DEBUG_MODE) {
+      System.out.println("Restarting with " + newNogoods.size() + " new nogoods.");
+    }
+
+    if (nogoods == null) {
+      nogoods = new BinaryCSPNogoodStore(this);
+    }
+    for (int[] nogood : newNogoods) {
+      if (nogood.length == 2) {
+        if (!pruneDomain(nogood[0], nogood[1]) || !enforceLocalConsistency(nogood[0], true)) {
+          // Every solution has been found.
+          return false;
+        }
+      } else {
+        nogoods.add(nogood);
       }
     }
+    return true;
+  }
 
-    //System.out.println("Finished exploring tree (1).");
-    //System.out.println("Finished exploring tree (2).");
-    restoreDomain(var, val);
+  /**
+   * Works out a term of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+   * @param i The index of the term, starting from 1.
+   * @return The term.
+   */
+  private static int luby(int i) {
+    int k = 1;
+    while ((1 << k) - 1 < i) {
+      k++;
+    }
+    if ((1 << k) - 1 == i) {
+      return 1 << (k - 1);
+    }
+    return luby(i - (1 << (k - 1)) + 1);
+  }
 
-    return false;
+  /**
+   * Records the decision made at the current level of the trail.
+   * @param var The variable of the decision.
+   * @param val The value of the decision.
+   * @param positive Whether var was assigned val rather than val removed from var.
+   */
+  private void recordDecision(int var, int val, boolean positive) {
+    int level = trail.getDepth() - 1;
+    if (level >= decisionVars.length) {
+      int length = Math.max(level + 1, decisionVars.length * 2);
+      decisionVars = Arrays.copyOf(decisionVars, length);
+      decisionVals = Arrays.copyOf(decisionVals, length);
+      decisionPositive = Arrays.copyOf(decisionPositive, length);
+      decisionNewValue = Arrays.copyOf(decisionNewValue, length);
+      componentsConnected = Arrays.copyOf(componentsConnected, length + 1);
+    }
+    decisionVars[level] = var;
+    decisionVals[level] = val;
+    decisionPositive[level] = positive;
+    decisionNewValue[level] = false;
+    // A right branch leaves the same variables to assign as the level above. A left branch can only split them if
+    // the variable assigned joined more than one of them.
+    componentsConnected[level + 1] = componentsConnected[level]
+        && (!positive || instance.hasAtMostOneUnassignedNeighbour(var));
   }
 
   /**
-   * Get the current state change.
-   * @return The current state change.
+   * Assigns a value to a variable for good, e.g. as the starting point of a subproblem, and propagates the change.
+   * Search never tries var != val, so it finishes once it backtracks past this assignment.
+   * @param var The variable to assign the value to.
+   * @param val The value to assign.
+   * @return Whether no domains were wiped out.
    */
-  protected BinaryCSPStateChange currentStateChanges() {
-    return stateChanges.peek();
+  boolean assignFixed(int var, int val) {
+    boolean changed = assign(var, val);
+    fixDecision();
+    return enforceLocalConsistency(var, changed);
   }
 
   /**
-   * Enter a new state by adding an empty state change to the stack.
-   * @return Whether the state was entered successfully.
+   * Marks the decision at the current level as one whose right branch is not to be explored by this solver.
+   * Backtracking undoes it like an explored right branch, without trying var != val.
    */
-  protected boolean enterNewState(int assignedVar) {
-    return stateChanges.add(new BinaryCSPStateChange(instance, assignedVar));
+  private void fixDecision() {
+    decisionPositive[trail.getDepth() - 1] = false;
+  }
+
+  /**
+   * Enter a new state by starting a new level on the trail.
+   * @param assignedVar The variable assigned in the new state or -1 if none is.
+   */
+  protected void enterNewState(int assignedVar) {
+    trail.pushLevel(assignedVar);
+    if (assignedVar == -1) {
+      discrepancies++;
+    }
   }
 
   /**
@@ -224,9 +1251,20 @@ public abstract class BinaryCSPSolver {
    * Only done when the current state is not the starting state.
    */
   protected void revertState() {
-    if (stateChanges.size() > 1) {
-      BinaryCSPStateChange stateChange = stateChanges.pop();
-      stateChange.revert(instance);
+    if (trail.getDepth() > 0) {
+      int level = trail.getDepth() - 1;
+      int assignedVar = trail.popLevel(this);
+      if (assignedVar == -1) {
+        discrepancies--;
+      } else {
+        if (valueUses != null) {
+          valueUses[decisionVals[level] - instance.getLB(assignedVar)]--;
+        }
+        instance.unassignedVars.restore(assignedVar);
+        if (sizeBuckets != null) {
+          sizeBuckets.add(assignedVar, instance.domains[assignedVar].size());
+        }
+      }
     } else {
       if (DEBUG_MODE) {
         System.out.println("States stack is at starting size.");
@@ -243,18 +1281,21 @@ public abstract class BinaryCSPSolver {
   protected boolean assign(int var, int val) {
     // Create a new state.
     enterNewState(var);
+    recordDecision(var, val, true);
     nodesExplored++;
-    instance.varList.remove((Object) var);
+    instance.unassignedVars.remove(var);
+    if (valueUses != null) {
+      valueUses[val - instance.getLB(var)]++;
+    }
+    if (sizeBuckets != null) {
+      sizeBuckets.remove(var, instance.domains[var].size());
+    }
 
     boolean changed = false;
-    Iterator<Integer> domainIterator = instance.domains.get(var).iterator();
-    while (domainIterator.hasNext()) {
-      int otherVal = domainIterator.next();
+    Domain domain = instance.domains[var];
+    for (int otherVal = domain.first(); otherVal != Domain.NONE; otherVal = domain.next(otherVal)) {
       if (val != otherVal) {
-        domainIterator.remove();
-        try {
-          pruneDomain(var, otherVal);
-        } catch (EmptyDomainException e) {
+        if (!pruneDomain(var, otherVal)) {
           System.err.println("Domain wipeout while assigning a variable! There is likely an error in the code.");
         }
         changed = true;
@@ -270,84 +1311,93 @@ public abstract class BinaryCSPSolver {
   /**
    * "Unassign" a specific value to a variable by removing it from the domain.
    * This means that the variable is set to not equal this specific value (right branch).
+   * The right branch gets its own state so that its changes can be undone once it has been explored.
    * @param var The variable to remove the value from.
    * @param val The value to remove.
-   * @throws EmptyDomainException If domain pruning resulted in a wipeout.
+   * @return Whether the domain of var still has values left.
    */
-  protected void unassign(int var, int val) throws EmptyDomainException {
+  protected boolean unassign(int var, int val) {
     revertState();
+    enterNewState(-1);
+    recordDecision(var, val, false);
     nodesExplored++;
-    pruneDomain(var, val);
     if (DEBUG_MODE) {
       System.out.println("Set var " + var + " != " + val);
     }
+    return pruneDomain(var, val);
   }
 
   /**
    * Remove / prune a specific value from a variable's domain.
+   * Constraints are left untouched as support checks only ever look at values still in the domains.
    * @param var The variable to remove the value from.
    * @param val The value to remove.
-   * @return Whether the value was removed / pruned successfully.
-   * @throws EmptyDomainException If domain pruning resulted in a wipeout.
+   * @return Whether the domain still has values left, i.e. false if pruning resulted in a wipeout.
    */
-  private void pruneDomain(int var, int val) throws EmptyDomainException {
-    instance.domains.get(var).remove(val);
-    currentStateChanges().domainPrunes.get(var).add(val);
-    if (instance.domains.get(var).isEmpty()) {
-      throw new EmptyDomainException("Domain wipeout when pruning domain!");
+  protected boolean pruneDomain(int var, int val) {
+    instance.domains[var].remove(val);
+    trail.push(var, val);
+    if (sizeBuckets != null && instance.unassignedVars.contains(var)) {
+      int size = instance.domains[var].size();
+      sizeBuckets.move(var, size + 1, size);
+    }
+    if (conflictCounts != null) {
+      updateConflictCounts(var, val, -1);
     }
-    removeInvalidConstraints(var, val);
+    return !instance.domains[var].isEmpty();
   }
 
   /**
-   * Remove all the constraints that use a value that is no longer in the variable's domain.
-   * @param var The variable with the changed domain.
-   * @param val The value that was removed from the domain.
+   * Puts a pruned value back into a variable's domain when backtracking.
+   * @param var The variable to restore the value to.
+   * @param val The value to restore.
    */
-  private boolean removeInvalidConstraints(int var, int val) {
-    boolean changed = false;
-    for (BinaryConstraint constraint : instance.constraints) {
-      if (constraint.containsVar(var)) {
-        boolean reverse = constraint.getSecondVar() == var;
-        Iterator<BinaryTuple> tupleIterator = constraint.tuples.iterator();
-        while (tupleIterator.hasNext()) {
-          BinaryTuple tuple = tupleIterator.next();
-          if ((!reverse && tuple.getVal1() == val) || (reverse && tuple.getVal2() == val)) {
-            currentStateChanges().addConstraintChange(constraint.getFirstVar(), constraint.getSecondVar(), tuple);
-            tupleIterator.remove();
-            changed = true;
-          }
-        }
-      }
+  protected void restoreValue(int var, int val) {
+    instance.domains[var].restore(val);
+    if (sizeBuckets != null && instance.unassignedVars.contains(var)) {
+      int size = instance.domains[var].size();
+      sizeBuckets.move(var, size - 1, size);
+    }
+    if (conflictCounts != null) {
+      updateConflictCounts(var, val, 1);
     }
-    return changed;
   }
 
   /**
-   * Readds a value to the domain of a variable and readds any removed constraints.
-   * @param var The variable with the domain to restore.
-   * @param val The value to put back into the domain.
+   * Updates the conflict counts of the values that conflict with a value which was pruned or restored.
+   * These are the values of each neighbouring variable that the value does not support.
+   * Constraints on the same pair of variables are counted together under the first one, so each pair of values
+   * conflicts at most once.
+   * @param var The variable of the value.
+   * @param val The value.
+   * @param change -1 if the value was pruned or 1 if it was restored.
    */
-  protected void restoreDomain(int var, int val) {
-    instance.domains.get(var).add(val);
-    currentStateChanges().domainPrunes.get(var).remove(val);
-
-    for (BinaryConstraint changedConstraint : currentStateChanges().getConstraintChanges()) {
-      if (changedConstraint.containsVar(var)) {
-        boolean reverse = changedConstraint.getSecondVar() == var;
-        Iterator<BinaryTuple> tupleIterator = changedConstraint.tuples.iterator();
-        while (tupleIterator.hasNext()) {
-          BinaryTuple removedTuple = tupleIterator.next();
-          if ((!reverse && removedTuple.getVal1() == val) || (reverse && removedTuple.getVal2() == val)) {
-            for (BinaryConstraint constraint : instance.constraints) {
-              if (constraint.equals(changedConstraint)) {
-                constraint.tuples.add(removedTuple);
-                break;
-              }
+  private void updateConflictCounts(int var, int val, int change) {
+    BinaryConstraint[] constraints = instance.getConstraints(var);
+    for (BinaryConstraint constraint : constraints) {
+      int otherVar = constraint.getOtherVar(var);
+      if (instance.getConstraint(var, otherVar) != constraint) {
+        continue;
+      }
+      int[] counts = conflictCounts[otherVar];
+      long[] supports = constraint.getSupports(var, val);
+      for (int word = 0; word < supports.length; word++) {
+        long supported = supports[word];
+        if (sharesPair[constraint.getId()]) {
+          for (BinaryConstraint other : constraints) {
+            if (other != constraint && other.getOtherVar(var) == otherVar) {
+              supported &= other.getSupports(var, val)[word];
             }
-            tupleIterator.remove();
           }
         }
+        long conflicts = ~supported;
+        if (counts.length - 64 * word < 64) {
+          conflicts &= (1L << (counts.length - 64 * word)) - 1;
+        }
+        while (conflicts != 0) {
+          counts[64 * word + Long.numberOfTrailingZeros(conflicts)] += change;
+          conflicts &= conflicts - 1;
+        }
       }
     }
   }
@@ -360,6 +1410,10 @@ public abstract class BinaryCSPSolver {
     switch (varSelectMode) {
       case SMALLEST_DOMAIN:
         return selectVarSmallestDomain();
+      case DOM_WDEG:
+        return selectVarDomWdeg();
+      case IMPACT:
+        return selectVarImpact();
       default:
         return selectVarAscending();
     }
@@ -370,8 +1424,8 @@ public abstract class BinaryCSPSolver {
    * @return The non-assigned variable with the smallest number.
    */
   private int selectVarAscending() {
-    if (!instance.varList.isEmpty()) {
-      return instance.varList.get(0);
+    if (!instance.unassignedVars.isEmpty()) {
+      return instance.unassignedVars.first();
     }
     System.out.println("Trying to select variable when all are assigned! Returning default 0.");
     return 0;
@@ -379,18 +1433,11 @@ public abstract class BinaryCSPSolver {
 
   /**
    * Select a non-assigned variable based on which has the smallest domain.
+   * The variables are kept in buckets by domain size, so this does not scan them.
    * @return The non-assigned variable with the smallest domain.
    */
   private int selectVarSmallestDomain() {
-    int smallestDomainVar = -1;
-    int smallestDomainSize = Integer.MAX_VALUE;
-    for (int var : instance.varList) {
-      int domainSize = instance.domains.get(var).size();
-      if (domainSize < smallestDomainSize) {
-        smallestDomainVar = var;
-        smallestDomainSize = instance.domains.get(smallestDomainVar).size();
-      }
-    }
+    int smallestDomainVar = sizeBuckets.smallest(random);
     if (smallestDomainVar == -1) {
       System.out.println("Trying to select variable when all are assigned! Returning default 0.");
       return 0;
@@ -398,6 +1445,95 @@ public abstract class BinaryCSPSolver {
     return smallestDomainVar;
   }
 
+  /**
+   * Select a non-assigned variable with the smallest ratio of domain size to weighted degree.
+   * The weighted degree of a variable is the sum of the weights of its constraints to other non-assigned variables.
+   * Variables with no such constraints are only chosen when every variable has none, by smallest domain.
+   * @return The non-assigned variable with the smallest domain over weighted degree.
+   */
+  private int selectVarDomWdeg() {
+    int bestVar = -1;
+    double bestRatio = Double.MAX_VALUE;
+    int bestDomainSize = Integer.MAX_VALUE;
+    int ties = 0;
+    Domain unassignedVars = instance.unassignedVars;
+    for (int var = unassignedVars.first(); var != Domain.NONE; var = unassignedVars.next(var)) {
+      int weightedDegree = 0;
+      for (BinaryConstraint constraint : instance.getConstraints(var)) {
+        if (unassignedVars.contains(constraint.getOtherVar(var))) {
+          weightedDegree += constraintWeights[constraint.getId()];
+        }
+      }
+      int domainSize = instance.domains[var].size();
+      double ratio = weightedDegree == 0 ? Double.MAX_VALUE : (double) domainSize / weightedDegree;
+      if (ratio < bestRatio || (ratio == bestRatio && domainSize < bestDomainSize)) {
+        bestVar = var;
+        bestRatio = ratio;
+        bestDomainSize = domainSize;
+        ties = 1;
+      } else if (ratio == bestRatio && domainSize == bestDomainSize && breakTie(++ties)) {
+        bestVar = var;
+      }
+    }
+    if (bestVar == -1) {
+      System.out.println("Trying to select variable when all are assigned! Returning default 0.");
+      return 0;
+    }
+    return bestVar;
+  }
+
+  /**
+   * Select a non-assigned variable with the smallest estimated search space left after branching on it.
+   * This is the sum of 1 - impact over the values in its domain, so values never tried count fully.
+   * With no impacts learned this falls back to choosing the smallest domain.
+   * @return The non-assigned variable with the smallest estimated search space.
+   */
+  private int selectVarImpact() {
+    int bestVar = -1;
+    double bestSpace = Double.MAX_VALUE;
+    int ties = 0;
+    Domain unassignedVars = instance.unassignedVars;
+    for (int var = unassignedVars.first(); var != Domain.NONE; var = unassignedVars.next(var)) {
+      double space = 0;
+      double[] varImpacts = impacts[var];
+      int lb = instance.getLB(var);
+      Domain domain = instance.domains[var];
+      for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+        space += 1 - varImpacts[val - lb];
+      }
+      if (space < bestSpace) {
+        bestVar = var;
+        bestSpace = space;
+        ties = 1;
+      } else if (space == bestSpace && breakTie(++ties)) {
+        bestVar = var;
+      }
+    }
+    if (bestVar == -1) {
+      System.out.println("Trying to select variable when all are assigned! Returning default 0.");
+      return 0;
+    }
+    return bestVar;
+  }
+
+  /**
+   * Decides whether a candidate tied with the best so far should replace it.
+   * Each of the tied candidates ends up chosen with equal probability.
+   * @param ties The number of candidates tied for best, including the new one.
+   * @return Whether to choose the new candidate. Always false if ties are not broken randomly.
+   */
+  private boolean breakTie(int ties) {
+    return random != null && random.nextInt(ties) == 0;
+  }
+
+  /**
+   * Increases the weight of a constraint that caused a domain wipeout, for DOM_WDEG.
+   * @param constraint The constraint that caused the wipeout.
+   */
+  protected void constraintFailed(BinaryConstraint constraint) {
+    constraintWeights[constraint.getId()]++;
+  }
+
   /**
    * Selects a value in the domain of a given variable.
    * @param var The variable with the domain to get a value from.
@@ -406,7 +1542,9 @@ public abstract class BinaryCSPSolver {
   protected int selectVal(int var) {
     switch (valSelectMode) {
       case MIN_CONFLICTS:
-        return selectValMinConflicts(var).valAssigned;
+        return selectValMinConflicts(var);
+      case IMPACT:
+        return selectValImpact(var);
       default:
         return selectValAscending(var);
     }
@@ -419,41 +1557,84 @@ public abstract class BinaryCSPSolver {
    * @return The first value in the domain of the variable.
    */
   private int selectValAscending(int var) {
-    return instance.domains.get(var).iterator().next();
+    return instance.domains[var].first();
   }
 
-  /** If using a Geelen promise / heuristic / etc, could do value choosing and assigning in one step to avoid searching for lost constraints twice. */
   /**
-   * Selects the value with the minimum conflicts in the domain of a given variable.
-   * This is the value that removes the fewest values from the domains of variables left to assign.
+   * Select the value with the smallest average impact in the domain of a given variable.
+   * This is the value expected to leave the most of the search space, so the most likely to lead to a solution.
+   * Values never tried have an impact of 0 and so are tried first.
    * @param var The variable with the domain to get a value from.
-   * @return The value with the minimum conflicts.
+   * @return The value with the smallest impact.
    */
-  private GeelenPair selectValMinConflicts(int var) {
-    GeelenPair minGeelenPair = null;
-    int minLost = Integer.MAX_VALUE;
-    for (GeelenPair potentialGeelenPair : getGeelenPairs(var)) {
-      if (potentialGeelenPair.lostSize() < minLost) {
-        minGeelenPair = potentialGeelenPair;
-        minLost = potentialGeelenPair.lostSize();
+  private int selectValImpact(int var) {
+    int bestVal = Domain.NONE;
+    double bestImpact = Double.MAX_VALUE;
+    int ties = 0;
+    double[] varImpacts = impacts[var];
+    int lb = instance.getLB(var);
+    Domain domain = instance.domains[var];
+    for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+      if (varImpacts[val - lb] < bestImpact) {
+        bestVal = val;
+        bestImpact = varImpacts[val - lb];
+        ties = 1;
+      } else if (varImpacts[val - lb] == bestImpact && breakTie(++ties)) {
+        bestVal = val;
       }
     }
-    return minGeelenPair;
+    return bestVal;
+  }
+
+  /**
+   * Works out the size of the search space as the log of the product of the domain sizes.
+   * @return The natural log of the number of complete assignments left in the current domains.
+   */
+  private double logSearchSpace() {
+    double logSpace = 0;
+    for (Domain domain : instance.domains) {
+      logSpace += logSizes[domain.size()];
+    }
+    return logSpace;
   }
 
   /**
-   * Gets the geelen pairs for a specific variable.
-   * @param var The variable to get the pairs for.
-   * @return A set of Geelen pairs for each value of var's domain.
+   * Adds a measured impact of an assignment to its running average.
+   * @param var The variable assigned.
+   * @param val The value assigned.
+   * @param impact The fraction of the search space removed by the assignment and its propagation.
+   */
+  private void updateImpact(int var, int val, double impact) {
+    int index = val - instance.getLB(var);
+    int count = ++impactCounts[var][index];
+    impacts[var][index] += (impact - impacts[var][index]) / count;
+  }
+
+  /**
+   * Selects the value with the minimum conflicts in the domain of a given variable.
+   * This is the value that removes the fewest values from the domains of variables left to assign.
+   * Values of assigned variables never count, as propagation leaves only values consistent with them.
+   * @param var The variable with the domain to get a value from.
+   * @return The value with the minimum conflicts.
    */
-  private Set<GeelenPair> getGeelenPairs(int var) {
-    Set<GeelenPair> geelenPairs = new LinkedHashSet<GeelenPair>();
-    Iterator<Integer> domainIterator = instance.domains.get(var).iterator();
-    while (domainIterator.hasNext()) {
-      int val = domainIterator.next();
-      geelenPairs.add(new GeelenPair(instance, var, val));
+  private int selectValMinConflicts(int var) {
+    int minVal = Domain.NONE;
+    int minConflicts = Integer.MAX_VALUE;
+    int ties = 0;
+    int[] counts = conflictCounts[var];
+    int lb = instance.getLB(var);
+    Domain domain = instance.domains[var];
+    for (int val = domain.first(); val != Domain.NONE; val = domain.next(val)) {
+      int conflicts = counts[val - lb];
+      if (conflicts < minConflicts) {
+        minVal = val;
+        minConflicts = conflicts;
+        ties = 1;
+      } else if (conflicts == minConflicts && breakTie(++ties)) {
+        minVal = val;
+      }
     }
-    return geelenPairs;
+    return minVal;
   }
 
   /**
@@ -461,94 +1642,176 @@ public abstract class BinaryCSPSolver {
    * @return Whether all variables have assignments.
    */
   protected boolean completeAssignments() {
-    return instance.varList.isEmpty();
+    return instance.unassignedVars.isEmpty();
   }
 
   /**
-   * Gets all the arcs around a single variable (node) in the instance's graph.
-   * @param var The variable to get connected arcs of.
-   * @return All arcs around the variable.
+   * Sets how revise looks for supports, creating the residue tables if the mode needs them.
+   * @param propagationMode The propagation mode to use.
    */
-  protected Queue<Arc> getArcs(int var) {
-    Queue<Arc> queue = new LinkedList<Arc>();
-    for (BinaryConstraint constraint : instance.constraints) {
-      if (constraint.getFirstVar() == var || constraint.getSecondVar() == var) {
-        createArcs(constraint, queue);
+  public void setPropagationMode(PropagationMode propagationMode) {
+    this.propagationMode = propagationMode;
+    if (propagationMode != PropagationMode.AC3 && residues == null) {
+      residues = new int[2 * instance.constraints.size()][];
+      for (BinaryConstraint constraint : instance.constraints) {
+        for (int var : new int[] { constraint.getFirstVar(), constraint.getSecondVar() }) {
+          int[] arcResidues = new int[instance.getUB(var) - instance.getLB(var) + 1];
+          Arrays.fill(arcResidues, Domain.NONE);
+          residues[constraint.getArcId(var)] = arcResidues;
+        }
       }
     }
-    return queue;
   }
 
   /**
-   * Creates arcs for a constraint and adds them to a queue.
-   * @param constraint The constraint to create arcs for.
-   * @param queue The queue to add the arcs to.
+   * An arc revision that removes any domain values not supporting it.
+   * @param arc The arc to revise.
+   * @return UNCHANGED, CHANGED or WIPEOUT depending on what happened to the domain of the arc's first variable.
    */
-  protected void createArcs(BinaryConstraint constraint, Queue<Arc> queue) {
-    queue.add(new Arc(constraint.getFirstVar(), constraint.getSecondVar()));
-    queue.add(new Arc(constraint.getSecondVar(), constraint.getFirstVar()));
+  protected int revise(Arc arc) {
+    // Look up the constraint that matches the arc.
+    BinaryConstraint binaryConstraint = instance.getConstraint(arc.getVal1(), arc.getVal2());
+    if (binaryConstraint == null) {
+      revisionsDone++;
+      return UNCHANGED;
+    }
+    return revise(binaryConstraint, arc.getVal1());
   }
 
   /**
-   * An arc revision that removes any domain values not supporting it.
-   * @param arc The arc to revise.
-   * @return Whether the domain of the arc's primary / first variable was changed without any domain wipeout.
-   * @throws EmptyDomainException If an arc revision resulted in a domain wipeout.
+   * An arc revision that removes any values of a variable not supported by a constraint.
+   * @param binaryConstraint The constraint of the arc.
+   * @param var The variable to revise. Must be one of the constraint's variables.
+   * @return UNCHANGED, CHANGED or WIPEOUT depending on what happened to the domain of var.
    */
-  protected boolean revise(Arc arc) throws EmptyDomainException {
-    // Boolean value to track whether the domain was changed.
-    boolean changed = false;
+  protected int revise(BinaryConstraint binaryConstraint, int var) {
+    // Track whether the domain was changed.
+    int result = UNCHANGED;
     revisionsDone++;
-    // Try to find the constraint that matches the arc.
-    for (BinaryConstraint binaryConstraint : instance.constraints) {
-      if (binaryConstraint.matches(arc)) {
-        // Check each value in the arc's primary / first variable's domain for support.
-
-        Iterator<Integer> domainIterator = instance.domains.get(arc.getVal1()).iterator();
-        while (domainIterator.hasNext()) {
-          int val1 = domainIterator.next();
-
-          // To be supported, the value must have a matching value in the second variable's domain to satisfy the constraint.
-          boolean valSupported = false;
-          for (int val2 : instance.domains.get(arc.getVal2())) {
-            // Check whether the constraint has a tuple matching the pairs of values.
-            valSupported = binaryConstraint.supportsTuple(arc, new BinaryTuple(val1, val2));
-            if (valSupported) {
-              break;
-            }
-          }
-          // If the value is not supported, remove it from the domain of the variable.
-          // Remove the value from the iterator first to avoid an error.
-          // Then prune the domain and updated the changed bool variable.
-          if (!valSupported) {
-            domainIterator.remove();
-            pruneDomain(arc.getVal1(), val1);
-            changed = true;
-
-            // Check whether the domain is empty.
-            if (instance.domains.get(arc.getVal1()).isEmpty()) {
-              throw new EmptyDomainException("Domain wipeout when revising arcs!");
-            }
-          }
+    // Check each value in var's domain for support.
+    Domain domain1 = instance.domains[var];
+    Domain domain2 = instance.domains[binaryConstraint.getOtherVar(var)];
+    for (int val1 = domain1.first(); val1 != Domain.NONE; val1 = domain1.next(val1)) {
+      // To be supported, the value must have a matching value in the second variable's domain to satisfy the constraint.
+      boolean valSupported;
+      switch (propagationMode) {
+        case AC3RM:
+        case AC2001:
+          valSupported = hasResidualSupport(binaryConstraint, var, val1, domain2);
+          break;
+        case AC3BIT:
+          long[] supports = binaryConstraint.getSupports(var, val1);
+          valSupported = supports != null && domain2.intersects(supports);
+          break;
+        default:
+          valSupported = findSupport(binaryConstraint, var, val1, domain2, domain2.first(),
+              Domain.NONE) != Domain.NONE;
+          break;
+      }
+      // If the value is not supported, remove it from the domain of the variable, stopping early on a wipeout.
+      if (!valSupported) {
+        if (!pruneDomain(var, val1)) {
+          constraintFailed(binaryConstraint);
+          return WIPEOUT;
         }
-        // Do not look for any further constraints as there should only be one matching one.
-        break;
+        result = CHANGED;
       }
     }
-    return changed;
+    return result;
+  }
+
+  /**
+   * Checks for a support of a value by first looking at its residue, the last support found for it on this arc.
+   * On a miss, AC3RM scans the other domain from the start and AC2001 resumes after the residue.
+   * Supports are not stored on the trail, so values before the residue may have come back after backtracking.
+   * AC2001 therefore wraps around to check them instead of skipping them.
+   * @param constraint The constraint of the arc.
+   * @param var The variable with the value needing support.
+   * @param val The value needing support.
+   * @param otherDomain The domain of the constraint's other variable.
+   * @return Whether the value has a support in the other domain.
+   */
+  private boolean hasResidualSupport(BinaryConstraint constraint, int var, int val, Domain otherDomain) {
+    int[] arcResidues = residues[constraint.getArcId(var)];
+    int index = val - instance.getLB(var);
+    int residue = arcResidues[index];
+    if (residue != Domain.NONE && otherDomain.contains(residue)) {
+      return true;
+    }
+
+    int support;
+    if (propagationMode == PropagationMode.AC2001 && residue != Domain.NONE) {
+      support = findSupport(constraint, var, val, otherDomain, otherDomain.next(residue), Domain.NONE);
+      if (support == Domain.NONE) {
+        support = findSupport(constraint, var, val, otherDomain, otherDomain.first(), residue);
+      }
+    } else {
+      support = findSupport(constraint, var, val, otherDomain, otherDomain.first(), Domain.NONE);
+    }
+
+    if (support == Domain.NONE) {
+      return false;
+    }
+    arcResidues[index] = support;
+    return true;
   }
 
   /**
-   * Prints the solution and increment the solutions counter.
+   * Scans part of a domain for a value supporting another value.
+   * @param constraint The constraint to check against.
+   * @param var The variable with the value needing support.
+   * @param val The value needing support.
+   * @param otherDomain The domain of the constraint's other variable.
+   * @param start The value of otherDomain to start scanning from.
+   * @param end The value of otherDomain to stop scanning at (exclusive) or NONE to scan to the end.
+   * @return The first supporting value found or NONE if there is none.
    */
-  protected void showSolution() {
-    StringBuilder stringBuilder = new StringBuilder("Found solution!\n");
-    for (Set<Integer> domain : instance.domains) {
-      stringBuilder.append(domain.iterator().next());
-      stringBuilder.append('\n');
+  private int findSupport(BinaryConstraint constraint, int var, int val, Domain otherDomain, int start, int end) {
+    for (int otherVal = start; otherVal != Domain.NONE
+        && (end == Domain.NONE || otherVal < end); otherVal = otherDomain.next(otherVal)) {
+      // Check whether the constraint allows the pair of values.
+      if (constraint.isSupported(var, val, otherVal)) {
+        return otherVal;
+      }
     }
-    System.out.println(stringBuilder.toString());
+    return Domain.NONE;
+  }
+
+  /**
+   * Passes the solution to the solution sink and increments the solutions counter.
+   * @return Whether the sink wants search to carry on looking for more solutions.
+   */
+  protected boolean showSolution() {
+    if (solution == null) {
+      solution = new int[instance.domains.length];
+    }
+    for (int var = 0; var < solution.length; var++) {
+      solution[var] = instance.domains[var].first();
+    }
+    return acceptSolution(solution);
+  }
+
+  /**
+   * Passes a solution to the solution sink and increments the solutions counter.
+   * With SPEC, every distinct image of the solution under the symmetries is passed on as well. With AUTO, only the
+   * solution itself is, as the permutations of the values it stands for can be far too many to list.
+   * @param solution The value of each variable, given to the sink as a view.
+   * @return Whether the sink wants search to carry on looking for more solutions.
+   */
+  boolean acceptSolution(int[] solution) {
     solutionsFound++;
+    if (symmetryMode == SymmetryMode.SPEC) {
+      List<int[]> orbit = instance.symmetries.orbit(solution);
+      symmetricSolutionsFound += orbit.size();
+      for (int[] image : orbit) {
+        if (!solutionSink.accept(image)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    symmetricSolutionsFound += countSymmetricSolutions(solution);
+    return solutionSink.accept(solution);
   }
 
   /**
@@ -557,10 +1820,26 @@ public abstract class BinaryCSPSolver {
   protected void printInfo() {
     if (solutionsFound == 0) {
       System.out.println("Failed to find a solution!");
+    } else if (symmetryMode != SymmetryMode.NONE) {
+      System.out.println("Found " + solutionsFound + " solutions up to symmetry, standing for "
+          + symmetricSolutionsFound + " solutions!");
     } else {
       System.out.println("Found " + solutionsFound + " solutions!");
     }
     System.out.println("Explored " + nodesExplored + " nodes!");
     System.out.println("Performed " + revisionsDone + " arc revisions!");
+    if (decomposeComponents) {
+      System.out.println("Split into independent components " + componentSplits + " times!");
+    }
+    if (searchMode == SearchMode.LDS) {
+      System.out.println("Searched with up to " + discrepancyLimit + " discrepancies!");
+    }
+    if (status == Status.TIMEOUT || status == Status.LIMIT_REACHED || status == Status.CANCELLED) {
+      System.out.println("Search stopped early (" + status + ")! Only the search done so far is counted.");
+    }
+    if (restartMode != RestartMode.NONE) {
+      System.out.println("Restarted " + restartsDone + " times, recording " + (nogoods == null ? 0 : nogoods.size())
+          + " nogoods that pruned " + (nogoods == null ? 0 : nogoods.valuesPruned) + " values!");
+    }
   }
 }
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A subproblem of an instance, given by assignments var = val made on top of the instance's starting domains.
+ * Subproblems only refer to variables and values by number, so they can be saved to a file and replayed separately
+ * from the instance, as text of the form "var=val,var=val" with one subproblem per line.
+ */
+public class BinaryCSPSubproblem {
+    private final int[] vars;
+    private final int[] vals;
+
+    /**
+     * @param vars The variables assigned, in the order they are assigned.
+     * @param vals The value assigned to each variable.
+     */
+    public BinaryCSPSubproblem(int[] vars, int[] vals) {
+        this.vars = vars;
+        this.vals = vals;
+    }
+
+    /**
+     * Reads a subproblem written by toString.
+     * @param text The assignments of the form "var=val,var=val". An empty string is the whole instance.
+     * @return The subproblem.
+     * @throws IllegalArgumentException If an assignment is not of the form var=val.
+     */
+    public static BinaryCSPSubproblem parse(String text) throws IllegalArgumentException {
+        String[] assignments = text.isBlank() ? new String[0] : text.trim().split(",");
+        int[] vars = new int[assignments.length];
+        int[] vals = new int[assignments.length];
+        for (int i = 0; i < assignments.length; i++) {
+            String[] varVal = assignments[i].split("=");
+            if (varVal.length != 2) {
+                throw new IllegalArgumentException("Assignments must be of the form var=val: " + assignments[i]);
+            }
+            vars[i] = Integer.parseInt(varVal[0].trim());
+            vals[i] = Integer.parseInt(varVal[1].trim());
+        }
+        return new BinaryCSPSubproblem(vars, vals);
+    }
+
+    /**
+     * Writes subproblems to a file, one per line, replacing any file already there.
+     * @param subproblems The subproblems.
+     * @param filePath The path of the file.
+     * @throws UncheckedIOException If the file cannot be written.
+     */
+    public static void write(List<BinaryCSPSubproblem> subproblems, String filePath) throws UncheckedIOException {
+        List<String> lines = new ArrayList<String>();
+        for (BinaryCSPSubproblem subproblem : subproblems) {
+            lines.add(subproblem.toString());
+        }
+        try {
+            Files.write(Paths.get(filePath), lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write subproblem file: " + filePath, e);
+        }
+    }
+
+    /**
+     * Reads subproblems written by write.
+     * @param filePath The path of the file.
+     * @return The subproblems, in the order they were written.
+     * @throws UncheckedIOException If the file cannot be read.
+     * @throws IllegalArgumentException If a line is not a subproblem.
+     */
+    public static List<BinaryCSPSubproblem> read(String filePath) throws UncheckedIOException, IllegalArgumentException {
+        List<BinaryCSPSubproblem> subproblems = new ArrayList<BinaryCSPSubproblem>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(filePath))) {
+                subproblems.add(parse(line));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read subproblem file: " + filePath, e);
+        }
+        return subproblems;
+    }
+
+    /**
+     * Checks that every assignment of the subproblem is to a variable of an instance.
+     * Values outside a variable's domain are allowed, and simply leave the subproblem without solutions.
+     * @param instance The instance.
+     * @throws IllegalArgumentException If a variable is not in the instance.
+     */
+    public void check(BinaryCSP instance) throws IllegalArgumentException {
+        for (int var : vars) {
+            if (var < 0 || var >= instance.getNoVariables()) {
+                throw new IllegalArgumentException("Subproblem " + this + " assigns a variable not in the instance.");
+            }
+        }
+    }
+
+    /**
+     * Makes the assignments of the subproblem in a solver that has been prepared but not started searching.
+     * Search never tries var != val for these assignments, so it finishes once it backtracks past them.
+     * @param solver The solver to make the assignments in.
+     * @return Whether every assignment was possible and propagating them did not wipe out a domain.
+     */
+    public boolean apply(BinaryCSPSolver solver) {
+        for (int i = 0; i < vars.length; i++) {
+            if (!solver.instance.domains[vars[i]].contains(vals[i]) || !solver.assignFixed(vars[i], vals[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of assignments.
+     */
+    public int size() {
+        return vars.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < vars.length; i++) {
+            if (i > 0) {
+                stringBuilder.append(',');
+            }
+            stringBuilder.append(vars[i]).append('=').append(vals[i]);
+        }
+        return stringBuilder.toString();
+    }
+}
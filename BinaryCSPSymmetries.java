@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A group of symmetries of an instance, each mapping every assignment var = val to another assignment.
+ * Symmetries are broken with lex-leader constraints: a solution is only accepted if it is lexicographically no greater
+ * than its image under every symmetry, comparing the values of the variables in ascending order.
+ * When every element of the group apart from the identity is listed, this keeps exactly one solution of each orbit.
+ * The number of solutions an accepted solution stands for is then the number of distinct images it has.
+ * Symmetries are never changed once read, so copies of an instance share them.
+ */
+public class BinaryCSPSymmetries {
+    private final int[] lbs;
+    // The index of the first assignment of each variable. The assignment var = val has index offsets[var] + val - lb.
+    private final int[] offsets;
+    // The variable of each assignment, by index.
+    private final int[] indexVars;
+
+    // The image and preimage of each assignment under each symmetry, stored by index.
+    private final List<int[]> images = new ArrayList<int[]>();
+    private final List<int[]> preimages = new ArrayList<int[]>();
+
+    /**
+     * Creates an empty group for an instance. Symmetries are added with add.
+     * @param instance The instance.
+     */
+    public BinaryCSPSymmetries(BinaryCSP instance) {
+        int noVariables = instance.getNoVariables();
+        lbs = new int[noVariables];
+        offsets = new int[noVariables + 1];
+        for (int var = 0; var < noVariables; var++) {
+            lbs[var] = instance.getLB(var);
+            offsets[var + 1] = offsets[var] + instance.getUB(var) - instance.getLB(var) + 1;
+        }
+        indexVars = new int[offsets[noVariables]];
+        for (int var = 0; var < noVariables; var++) {
+            Arrays.fill(indexVars, offsets[var], offsets[var + 1], var);
+        }
+    }
+
+    /**
+     * Adds a symmetry given as pairs of assignments. Assignments not given are mapped to themselves.
+     * @param pairs Each pair as var, val, imageVar, imageVal.
+     * @throws IllegalArgumentException If the pairs do not map the assignments one to one or are out of range.
+     */
+    public void add(List<int[]> pairs) throws IllegalArgumentException {
+        int[] image = new int[offsets[offsets.length - 1]];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = i;
+        }
+        for (int[] pair : pairs) {
+            if (!inRange(pair[0], pair[1]) || !inRange(pair[2], pair[3])) {
+                throw new IllegalArgumentException("Symmetry " + (images.size() + 1) + " maps an assignment out of range.");
+            }
+            image[index(pair[0], pair[1])] = index(pair[2], pair[3]);
+        }
+        int[] preimage = new int[image.length];
+        Arrays.fill(preimage, -1);
+        for (int i = 0; i < image.length; i++) {
+            if (preimage[image[i]] != -1) {
+                throw new IllegalArgumentException("Symmetry " + (images.size() + 1) + " is not one to one.");
+            }
+            preimage[image[i]] = i;
+        }
+        images.add(image);
+        preimages.add(preimage);
+    }
+
+    /**
+     * @return The number of symmetries, not counting the identity.
+     */
+    public int size() {
+        return images.size();
+    }
+
+    /**
+     * Checks whether the current domains can still lead to a solution that is its own lex-leader.
+     * For each symmetry, the values of the variables are compared in ascending order against the values the image
+     * can take. Comparison goes on while both are fixed to the same value. At the first difference, the domains fail
+     * if every value the variable can take is greater than every value the image can take there.
+     * @param domains The current domains.
+     * @return False if every solution left is greater than its image under some symmetry.
+     */
+    public boolean isLexLeader(Domain[] domains) {
+        for (int[] preimage : preimages) {
+            for (int var = 0; var < domains.length; var++) {
+                // Work out the smallest and largest values the image can take at var.
+                int minImage = Domain.NONE;
+                int maxImage = Domain.NONE;
+                for (int index = offsets[var]; index < offsets[var + 1]; index++) {
+                    int from = preimage[index];
+                    int fromVar = indexVars[from];
+                    if (domains[fromVar].contains(from - offsets[fromVar] + lbs[fromVar])) {
+                        int val = index - offsets[var] + lbs[var];
+                        if (minImage == Domain.NONE) {
+                            minImage = val;
+                        }
+                        maxImage = val;
+                    }
+                }
+                Domain domain = domains[var];
+                if (minImage == Domain.NONE) {
+                    break;
+                }
+                if (domain.first() > maxImage) {
+                    return false;
+                }
+                if (domain.size() > 1 || minImage != maxImage || domain.first() != minImage) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the distinct solutions a solution is mapped to by the group, including itself.
+     * @param solution The value of each variable.
+     * @return The orbit of the solution, starting with the solution itself.
+     */
+    public List<int[]> orbit(int[] solution) {
+        List<int[]> orbit = new ArrayList<int[]>();
+        orbit.add(solution);
+        for (int[] image : images) {
+            int[] mapped = new int[solution.length];
+            for (int var = 0; var < solution.length; var++) {
+                int to = image[index(var, solution[var])];
+                int toVar = indexVars[to];
+                mapped[toVar] = to - offsets[toVar] + lbs[toVar];
+            }
+            boolean seen = false;
+            for (int[] other : orbit) {
+                seen |= Arrays.equals(other, mapped);
+            }
+            if (!seen) {
+                orbit.add(mapped);
+            }
+        }
+        return orbit;
+    }
+
+    private boolean inRange(int var, int val) {
+        return var >= 0 && var < lbs.length && val >= lbs[var] && index(var, val) < offsets[var + 1];
+    }
+
+    private int index(int var, int val) {
+        return offsets[var] + val - lbs[var];
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.Arrays;
+
+/**
+ * A trail of the domain removals made during search so that they can be undone when backtracking.
+ * Removals are stored as (var, val) pairs in a flat int array.
+ * Each search level records where its removals start, so reverting a level is a loop back to that mark.
+ * The arrays only grow, so entering and leaving levels does not allocate once search has warmed up.
+ */
+public class BinaryCSPTrail {
+    // Removed values, with the variable at 2i and the value at 2i + 1.
+    private int[] removals;
+    private int size;
+
+    // The start of each level in the removals and the variable assigned at that level.
+    private int[] levelStarts;
+    private int[] levelVars;
+    private int depth;
+
+    public BinaryCSPTrail() {
+        removals = new int[256];
+        levelStarts = new int[64];
+        levelVars = new int[64];
+    }
+
+    /**
+     * Starts a new level. Removals recorded from now on are undone together by popLevel.
+     * @param assignedVar The variable assigned at this level or -1 if no variable was assigned.
+     */
+    public void pushLevel(int assignedVar) {
+        if (depth == levelStarts.length) {
+            levelStarts = Arrays.copyOf(levelStarts, depth * 2);
+            levelVars = Arrays.copyOf(levelVars, depth * 2);
+        }
+        levelStarts[depth] = size;
+        levelVars[depth] = assignedVar;
+        depth++;
+    }
+
+    /**
+     * Records that a value was removed from a variable's domain.
+     * @param var The variable.
+     * @param val The value removed.
+     */
+    public void push(int var, int val) {
+        if (2 * size == removals.length) {
+            removals = Arrays.copyOf(removals, removals.length * 2);
+        }
+        removals[2 * size] = var;
+        removals[2 * size + 1] = val;
+        size++;
+    }
+
+    /**
+     * Undoes the current level, putting back removed values in reverse order.
+     * @param solver The solver that made the changes, which restores each value.
+     * @return The variable assigned at the level or -1 if none was.
+     */
+    public int popLevel(BinaryCSPSolver solver) {
+        depth--;
+        int start = levelStarts[depth];
+        for (int i = size - 1; i >= start; i--) {
+            solver.restoreValue(removals[2 * i], removals[2 * i + 1]);
+        }
+        size = start;
+        return levelVars[depth];
+    }
+
+    /**
+     * @return The number of removals recorded across all levels.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i The index of a removal, from 0 (oldest) to size() - 1 (newest).
+     * @return The variable of the removal.
+     */
+    public int getVar(int i) {
+        return removals[2 * i];
+    }
+
+    /**
+     * @param i The index of a removal, from 0 (oldest) to size() - 1 (newest).
+     * @return The value of the removal.
+     */
+    public int getVal(int i) {
+        return removals[2 * i + 1];
+    }
+
+    /**
+     * @return The number of levels entered and not yet popped. 0 is the starting state.
+     */
+    public int getDepth() {
+        return depth;
+    }
+}
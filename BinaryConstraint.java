@@ -2,12 +2,21 @@ import java.util.*;
 
 public final class BinaryConstraint {
   private int firstVar, secondVar;
-  public ArrayList<BinaryTuple> tuples;
+  // The position of the constraint in its instance's list of constraints.
+  private int id;
+  // The allowed tuples as read from the instance. Never changed after loading.
+  public final List<BinaryTuple> tuples;
+
+  // Compiled support tables, one per direction of the constraint.
+  // firstSupports[val1 - firstLB] is a bitset of the second variable's values (offset by secondLB) supporting val1.
+  // secondSupports[val2 - secondLB] is the same for the second variable, offset by firstLB.
+  private long[][] firstSupports, secondSupports;
+  private int firstLB, secondLB;
 
   public BinaryConstraint(int fv, int sv, ArrayList<BinaryTuple> t) {
     firstVar = fv;
     secondVar = sv;
-    tuples = t;
+    tuples = Collections.unmodifiableList(t);
   }
 
   public String toString() {
@@ -42,22 +51,97 @@ public final class BinaryConstraint {
     return firstVar == var || secondVar == var;
   }
 
+  public int getId() {
+    return id;
+  }
+
+  void setId(int id) {
+    this.id = id;
+  }
+
+  /**
+   * Gets an id for one direction of the constraint, unique among all arcs of the instance.
+   * @param var The variable being revised. Must be one of the constraint's variables.
+   * @return 2 * id for the first variable and 2 * id + 1 for the second.
+   */
+  public int getArcId(int var) {
+    return 2 * id + (var == firstVar ? 0 : 1);
+  }
+
+  /**
+   * @param arcId The id of one of the constraint's arcs.
+   * @return The variable revised by the arc.
+   */
+  public int getArcVar(int arcId) {
+    return (arcId & 1) == 0 ? firstVar : secondVar;
+  }
+
+  /**
+   * @param var One of the constraint's variables.
+   * @return The constraint's other variable.
+   */
+  public int getOtherVar(int var) {
+    return firstVar == var ? secondVar : firstVar;
+  }
+
   // public ArrayList<BinaryTuple> getTuples() {
   //   return tuples;
   // }
 
-  public boolean supportsTuple(Arc arc, BinaryTuple valueTuple) {
-    // Get the values of the tuple accounting for reversion.
-    // If the arc is reversed, then the order of the values must be switched.
-    int val1 = !arc.reversed ? valueTuple.getVal1() : valueTuple.getVal2();
-    int val2 = !arc.reversed ? valueTuple.getVal2() : valueTuple.getVal1();
-
+  /**
+   * Compiles the tuples into a support bitset for each value of each variable.
+   * Tuples with values outside of the given bounds can never be used and are left out.
+   * @param firstLB The lower bound of the first variable.
+   * @param firstUB The upper bound of the first variable.
+   * @param secondLB The lower bound of the second variable.
+   * @param secondUB The upper bound of the second variable.
+   */
+  public void compile(int firstLB, int firstUB, int secondLB, int secondUB) {
+    this.firstLB = firstLB;
+    this.secondLB = secondLB;
+    int firstRange = firstUB - firstLB + 1;
+    int secondRange = secondUB - secondLB + 1;
+    firstSupports = new long[firstRange][(secondRange + 63) >>> 6];
+    secondSupports = new long[secondRange][(firstRange + 63) >>> 6];
     for (BinaryTuple tuple : tuples) {
-      if (tuple.matches(val1, val2)) {
-        return true;
+      int bit1 = tuple.getVal1() - firstLB;
+      int bit2 = tuple.getVal2() - secondLB;
+      if (bit1 >= 0 && bit1 < firstRange && bit2 >= 0 && bit2 < secondRange) {
+        firstSupports[bit1][bit2 >>> 6] |= 1L << bit2;
+        secondSupports[bit2][bit1 >>> 6] |= 1L << bit1;
       }
     }
-    return false;
+  }
+
+  /**
+   * Checks whether a pair of values is allowed by the constraint using the compiled support tables.
+   * @param var The variable that val belongs to. Must be one of the constraint's variables.
+   * @param val The value of var.
+   * @param otherVal The value of the constraint's other variable.
+   * @return Whether the pair of values satisfies the constraint.
+   */
+  public boolean isSupported(int var, int val, int otherVal) {
+    long[] row = getSupports(var, val);
+    if (row == null) {
+      return false;
+    }
+    int bit = otherVal - (var == firstVar ? secondLB : firstLB);
+    return bit >= 0 && (bit >>> 6) < row.length && (row[bit >>> 6] & (1L << bit)) != 0;
+  }
+
+  /**
+   * Gets the compiled supports of a value.
+   * @param var The variable that val belongs to. Must be one of the constraint's variables.
+   * @param val The value of var.
+   * @return A bitset of the other variable's supporting values, offset by its lower bound, or null if val is out of bounds.
+   */
+  public long[] getSupports(int var, int val) {
+    long[][] supports = var == firstVar ? firstSupports : secondSupports;
+    int index = val - (var == firstVar ? firstLB : secondLB);
+    if (index < 0 || index >= supports.length) {
+      return null;
+    }
+    return supports[index];
   }
 
   public boolean equals(BinaryConstraint constraint) {
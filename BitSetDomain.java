@@ -0,0 +1,138 @@
+/**
+ * A domain stored as a bitset of 64-bit words, offset by the lower bound of the variable.
+ * Bit i represents the value lb + i.
+ */
+public final class BitSetDomain implements Domain {
+    private final long[] words;
+    private final int lb;
+    private final int ub;
+    private int size;
+
+    /**
+     * Creates a full domain containing every value from lb to ub (inclusive).
+     * @param lb The lower bound of the domain.
+     * @param ub The upper bound of the domain.
+     */
+    public BitSetDomain(int lb, int ub) {
+        this.lb = lb;
+        this.ub = ub;
+        int range = ub - lb + 1;
+        words = new long[(range + 63) >>> 6];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = -1L;
+        }
+        // Clear the unused bits of the last word.
+        if ((range & 63) != 0) {
+            words[words.length - 1] = (1L << range) - 1;
+        }
+        size = range;
+    }
+
+    private BitSetDomain(BitSetDomain other) {
+        lb = other.lb;
+        ub = other.ub;
+        words = other.words.clone();
+        size = other.size;
+    }
+
+    @Override
+    public boolean contains(int val) {
+        if (val < lb || val > ub) {
+            return false;
+        }
+        int bit = val - lb;
+        return (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    @Override
+    public boolean remove(int val) {
+        if (!contains(val)) {
+            return false;
+        }
+        int bit = val - lb;
+        words[bit >>> 6] &= ~(1L << bit);
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean restore(int val) {
+        if (val < lb || val > ub || contains(val)) {
+            return false;
+        }
+        int bit = val - lb;
+        words[bit >>> 6] |= 1L << bit;
+        size++;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int first() {
+        return nextFromBit(0);
+    }
+
+    @Override
+    public int next(int val) {
+        if (val < lb) {
+            return first();
+        }
+        return nextFromBit(val - lb + 1);
+    }
+
+    /**
+     * Finds the first set bit at or after a given bit, a word at a time.
+     * @param bit The bit to start searching from.
+     * @return The value of the first set bit or NONE if there is none.
+     */
+    private int nextFromBit(int bit) {
+        int wordIndex = bit >>> 6;
+        if (wordIndex >= words.length) {
+            return NONE;
+        }
+        long word = words[wordIndex] & (-1L << bit);
+        while (word == 0) {
+            if (++wordIndex == words.length) {
+                return NONE;
+            }
+            word = words[wordIndex];
+        }
+        return lb + (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    public boolean intersects(long[] bits) {
+        int length = Math.min(words.length, bits.length);
+        for (int i = 0; i < length; i++) {
+            if ((words[i] & bits[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Domain copy() {
+        return new BitSetDomain(this);
+    }
+
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder("{");
+        for (int val = first(); val != NONE; val = next(val)) {
+            if (stringBuilder.length() > 1) {
+                stringBuilder.append(", ");
+            }
+            stringBuilder.append(val);
+        }
+        return stringBuilder.append('}').toString();
+    }
+}
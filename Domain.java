@@ -0,0 +1,66 @@
+/**
+ * The domain of values that a single variable can still take.
+ * Values are visited with first() and next() rather than an iterator so that search does not allocate.
+ * Removing the value currently being visited is allowed.
+ */
+public interface Domain {
+    /**
+     * Returned by first() and next() when there are no further values.
+     */
+    int NONE = Integer.MIN_VALUE;
+
+    /**
+     * Checks whether a value is in the domain.
+     * @param val The value to check.
+     * @return Whether the value is in the domain.
+     */
+    boolean contains(int val);
+
+    /**
+     * Removes a value from the domain.
+     * @param val The value to remove.
+     * @return Whether the value was in the domain before removal.
+     */
+    boolean remove(int val);
+
+    /**
+     * Puts a previously removed value back into the domain.
+     * @param val The value to restore.
+     * @return Whether the value was missing from the domain before restoring.
+     */
+    boolean restore(int val);
+
+    /**
+     * @return The number of values in the domain.
+     */
+    int size();
+
+    /**
+     * @return Whether the domain has no values left (a wipeout).
+     */
+    boolean isEmpty();
+
+    /**
+     * @return The smallest value in the domain or NONE if the domain is empty.
+     */
+    int first();
+
+    /**
+     * Gets the next value in the domain after a given value.
+     * @param val The value to search after. Does not need to be in the domain.
+     * @return The smallest value in the domain greater than val or NONE if there is none.
+     */
+    int next(int val);
+
+    /**
+     * Checks whether the domain shares any value with a bitset, such as a compiled support row.
+     * @param bits A bitset of values offset by the same lower bound as the domain.
+     * @return Whether any value of the domain is set in bits.
+     */
+    boolean intersects(long[] bits);
+
+    /**
+     * @return A copy of the domain that can be changed independently.
+     */
+    Domain copy();
+}
@@ -8,6 +8,8 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -21,59 +23,100 @@ public class SolverDataExporter {
     public static void main(String[] args) {
         if (args.length == 0) {
             System.out.println(
-                    "Usage: args <instancesDirectoryPath> [outputFilename] [numberOfSolutions].\nYou must pass in the path to a folder containing instances. The output filename and number of solutions are optional.");
+                    "Usage: args <instancesDirectoryPath> [outputFilename] [numberOfSolutions] [timeLimit] [sink].\nYou must pass in the path to a folder containing instances. The output filename, number of solutions, time limit in milliseconds for each run and sink (COUNT / FIRST:k) are optional.");
         } else {
             SolverDataExporter solverDataExporter = new SolverDataExporter();
             String instancesDirectoryPath = args[0];
             String outputFilename = defaultFileName;
             int numberOfSolutions = 1;
+            long timeLimit = 0l;
             if (args.length > 1) {
                 outputFilename = args[1];
                 if (args.length > 2) {
                     numberOfSolutions = Integer.parseInt(args[2]);
+                    if (args.length > 3) {
+                        timeLimit = Long.parseLong(args[3]);
+                        if (args.length > 4) {
+                            solverDataExporter.sink = args[4];
+                            // Check the sink now rather than in every run.
+                            solverDataExporter.createSolutionSink();
+                        }
+                    }
                 }
             }
-            solverDataExporter.RunAndSaveResults(instancesDirectoryPath, outputFilename, numberOfSolutions);
+            solverDataExporter.RunAndSaveResults(instancesDirectoryPath, outputFilename, numberOfSolutions, timeLimit);
         }
     }
 
-    private void RunAndSaveResults(String directoryPath, String outputFilename, int solutionsToFind) {
+    // Where each run's solutions go (COUNT / FIRST:k).
+    private String sink = "COUNT";
+
+    // The solvers currently running, so that they can be cancelled if the whole run times out.
+    // Each one is removed once it finishes, so finished solvers and their instances can be freed.
+    private final Set<BinaryCSPSolver> runningSolvers = ConcurrentHashMap.newKeySet();
+
+    private void RunAndSaveResults(String directoryPath, String outputFilename, int solutionsToFind, long timeLimit) {
         // Read all info files at the given location.
         // Recursively list files in Java - Brett Ryan - https://stackoverflow.com/questions/2056221/recursively-list-files-in-java - Accessed 22.10.2023            
         try (Stream<Path> stream = Files.walk(Paths.get(directoryPath))) {
             // Search for all .info files recursively at the given path and sort the stream in alphabetical order.
-            List<Path> files = stream.sorted().filter(Files::isRegularFile)
+            List<Path> instanceFiles = stream.sorted().filter(Files::isRegularFile)
                     .filter(f -> f.toString().toLowerCase().endsWith(".csp")).toList();
 
             // Read each file's data and store it in a list.
             // Choosing the best concurrency list in Java - Travis Webb - https://stackoverflow.com/questions/8203864/choosing-the-best-concurrency-list-in-java - Accessed 22.11.2023
             List<List<String>> csvRows = Collections.synchronizedList(new ArrayList<List<String>>());
             List<String> headers = List.of("Instance", "Solver Type", "Solutions To Find", "Variable Ordering",
-                    "Value Ordering", "Solutions Found", "Nodes Explored", "Revisions Done", "Time Taken");
+                    "Value Ordering", "Status", "Solutions Found", "Nodes Explored", "Revisions Done", "Time Taken");
             csvRows.add(headers);
 
             // Run the problems across multiple threads.
             // wait until all threads finish their work in java - Peter Lawrey - https://stackoverflow.com/questions/7939257/wait-until-all-threads-finish-their-work-in-java - Accessed 22.11.2023
+            // Each instance is read and compiled once, then every configuration solves its own copy.
+            // Files that could not be read are skipped.
+            List<Path> files = new ArrayList<Path>();
+            List<BinaryCSP> instances = new ArrayList<BinaryCSP>();
+            for (Path instanceFilePath : instanceFiles) {
+                BinaryCSP instance = new BinaryCSPReader().readBinaryCSP(instanceFilePath.toString());
+                if (instance != null) {
+                    files.add(instanceFilePath);
+                    instances.add(instance);
+                }
+            }
+
             ExecutorService es = Executors.newCachedThreadPool();
-            for (String solverType : new String[] { "MAC", "FC" }) {
+            for (String solverType : new String[] { "MAC", "FC", "AC6" }) {
                 for (BinaryCSPFCSolver.VarSelectMode varSelectMode : BinaryCSPSolver.VarSelectMode.values()) {
                     // Switch with this when running medium Sudoku.
                     // BinaryCSPFCSolver.VarSelectMode varSelectMode = BinaryCSPFCSolver.VarSelectMode.SMALLEST_DOMAIN;
                     for (BinaryCSPFCSolver.ValSelectMode valSelectMode : BinaryCSPSolver.ValSelectMode.values()) {
-                        for (Path instanceFilePath : files) {
-                            Runnable runnable = createConfigRunnable(solutionsToFind, solverType, varSelectMode,
-                                    valSelectMode, instanceFilePath, csvRows);
+                        for (int i = 0; i < files.size(); i++) {
+                            Runnable runnable = createConfigRunnable(solutionsToFind, timeLimit, solverType,
+                                    varSelectMode, valSelectMode, files.get(i), instances.get(i), csvRows);
                             es.execute(runnable);
                         }
                     }
                 }
             }
+            // Local search ignores the selection modes, so it is run once for each instance.
+            // It stops at its default move limit if it cannot find the solutions asked for.
+            for (int i = 0; i < files.size(); i++) {
+                Runnable runnable = createConfigRunnable(solutionsToFind, timeLimit, "LOCAL",
+                        BinaryCSPSolver.VarSelectMode.ASCENDING, BinaryCSPSolver.ValSelectMode.ASCENDING,
+                        files.get(i), instances.get(i), csvRows);
+                es.execute(runnable);
+            }
             es.shutdown();
             try {
                 boolean finished = es.awaitTermination(1, TimeUnit.HOURS);
                 if (finished) {
                     ExportToCSV(csvRows, outputFilename + ".csv");
                 } else {
+                    // Cancel the runs left so their threads stop, recording how far each got.
+                    for (BinaryCSPSolver solver : runningSolvers) {
+                        solver.cancel();
+                    }
+                    es.awaitTermination(1, TimeUnit.MINUTES);
                     ExportToCSV(csvRows, outputFilename + "_TIMEOUT.csv");
                 }
             } catch (InterruptedException e) {
@@ -86,23 +129,37 @@ public class SolverDataExporter {
         }
     }
 
-    public Runnable createConfigRunnable(int solutionsToFind, String solverType,
+    public Runnable createConfigRunnable(int solutionsToFind, long timeLimit, String solverType,
             BinaryCSPFCSolver.VarSelectMode varSelectMode,
-            BinaryCSPFCSolver.ValSelectMode valSelectMode, Path instanceFilePath, List<List<String>> csvRows) {
+            BinaryCSPFCSolver.ValSelectMode valSelectMode, Path instanceFilePath, BinaryCSP sharedInstance,
+            List<List<String>> csvRows) {
         return new Runnable() {
             @Override
             public void run() {
                 BinaryCSPSolver solver;
-                BinaryCSP instance = new BinaryCSPReader().readBinaryCSP(instanceFilePath.toString());
+                BinaryCSP instance = sharedInstance.copy();
                 if (solverType.equals("MAC")) {
                     solver = new BinaryCSPMACSolver(
                             instance, solutionsToFind, varSelectMode, valSelectMode, false);
+                } else if (solverType.equals("AC6")) {
+                    solver = new BinaryCSPAC6Solver(
+                            instance, solutionsToFind, varSelectMode, valSelectMode, false);
+                } else if (solverType.equals("LOCAL")) {
+                    solver = new BinaryCSPLocalSearchSolver(instance, solutionsToFind, false);
                 } else {
                     solver = new BinaryCSPFCSolver(
                             instance, solutionsToFind, varSelectMode, valSelectMode, false);
                 }
 
-                solver.solve();
+                // Only the number of solutions is exported, so no time is spent printing them.
+                solver.solutionSink = createSolutionSink();
+                solver.timeLimit = timeLimit;
+                runningSolvers.add(solver);
+                try {
+                    solver.solve();
+                } finally {
+                    runningSolvers.remove(solver);
+                }
 
                 List<String> row = new ArrayList<String>();
                 String[] splitPath = instanceFilePath.toString().split("/");
@@ -118,9 +175,25 @@ public class SolverDataExporter {
         };
     }
 
+    /**
+     * Creates a sink for one run. Only sinks that do not print are allowed, and FIRST keeps its own
+     * solutions, so each run gets a new one.
+     * @return The sink named by the sink argument.
+     */
+    private BinaryCSPSolutionSink createSolutionSink() {
+        if (sink.equals("COUNT")) {
+            return BinaryCSPSolutionSink.COUNTING;
+        }
+        if (sink.startsWith("FIRST:")) {
+            return new BinaryCSPFirstSolutions(Integer.parseInt(sink.substring("FIRST:".length())));
+        }
+        throw new IllegalArgumentException("Unknown solution sink for the exporter: " + sink);
+    }
+
     // Reading a CSV File into an Array - Baeldung - https://www.baeldung.com/java-csv-file-array - Accessed 22.10.2023
     private List<String> ReadSolverResults(BinaryCSPSolver solver) {
         List<String> csvList = new ArrayList<String>();
+        csvList.add(String.valueOf(solver.getStatus()));
         csvList.add(String.valueOf(solver.solutionsFound));
         csvList.add(String.valueOf(solver.nodesExplored));
         csvList.add(String.valueOf(solver.revisionsDone));
@@ -60,5 +60,23 @@ public final class LangfordsGenerator {
     } catch (IOException e) {
       System.out.println("Could not write file to " + filePath + "\n" + e.toString());
     }
+
+    // Reversing the sequence maps the ith occurrence of a number at pos to the (k - 1 - i)th at seqLength + 1 - pos.
+    StringBuilder symmetryBuilder = new StringBuilder();
+    symmetryBuilder.append("//Langford symmetries, k = " + k + " n = " + n + "\n");
+    symmetryBuilder.append("\n// Number of symmetries (not counting the identity):\n1\n");
+    symmetryBuilder.append("\n// symmetries (var, val mapped to var, val):\ns\n");
+    for (int block = 1; block <= n; block++)
+      for (int i = 0; i < k; i++)
+        for (int pos = 1; pos <= seqLength; pos++)
+          symmetryBuilder.append(((block - 1) * k + i) + ", " + pos + ", " + ((block - 1) * k + k - 1 - i) + ", "
+              + (seqLength + 1 - pos) + "\n");
+
+    String symmetryFilePath = "instances/langfords" + k + "_" + n + ".sym";
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(symmetryFilePath))) {
+      writer.write(symmetryBuilder.toString());
+    } catch (IOException e) {
+      System.out.println("Could not write file to " + symmetryFilePath + "\n" + e.toString());
+    }
   }
 }
@@ -39,5 +39,58 @@ public final class QueensGenerator {
     } catch (IOException e) {
       System.out.println("Could not write file to " + filePath + "\n" + e.toString());
     }
+
+    // The symmetries of the board, loaded with the instance for symmetry breaking.
+    String symmetryFilePath = "instances/" + n + "Queens.sym";
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(symmetryFilePath))) {
+      writer.write(symmetries(n));
+    } catch (IOException e) {
+      System.out.println("Could not write file to " + symmetryFilePath + "\n" + e.toString());
+    }
+  }
+
+  /**
+   * Lists the rotations and reflections of the board, other than the identity.
+   * A queen in row r and column c is the assignment r = c.
+   */
+  private static String symmetries(int n) {
+    StringBuilder stringBuilder = new StringBuilder();
+    stringBuilder.append("//" + n + "-Queens symmetries.\n");
+    stringBuilder.append("\n// Number of symmetries (not counting the identity):\n7\n");
+    stringBuilder.append("\n// symmetries (var, val mapped to var, val):\n");
+    for (int symmetry = 1; symmetry < 8; symmetry++) {
+      stringBuilder.append("s\n");
+      for (int row = 0; row < n; row++)
+        for (int col = 0; col < n; col++) {
+          int[] image;
+          switch (symmetry) {
+            case 1: // Rotate 90 degrees.
+              image = new int[] { col, n - 1 - row };
+              break;
+            case 2: // Rotate 180 degrees.
+              image = new int[] { n - 1 - row, n - 1 - col };
+              break;
+            case 3: // Rotate 270 degrees.
+              image = new int[] { n - 1 - col, row };
+              break;
+            case 4: // Reflect left to right.
+              image = new int[] { row, n - 1 - col };
+              break;
+            case 5: // Reflect top to bottom.
+              image = new int[] { n - 1 - row, col };
+              break;
+            case 6: // Reflect in the main diagonal.
+              image = new int[] { col, row };
+              break;
+            default: // Reflect in the anti-diagonal.
+              image = new int[] { n - 1 - col, n - 1 - row };
+              break;
+          }
+          if (image[0] != row || image[1] != col)
+            stringBuilder.append(row + ", " + col + ", " + image[0] + ", " + image[1] + "\n");
+        }
+      stringBuilder.append('\n');
+    }
+    return stringBuilder.toString();
   }
 }